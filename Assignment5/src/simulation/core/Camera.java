@@ -0,0 +1,117 @@
+package simulation.core;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+
+public class Camera {
+	private static final float MAX_ZOOM = 8.0f;
+
+	private int worldWidth, worldHeight;
+	private int viewportWidth, viewportHeight;
+	private float offsetX = 0, offsetY = 0;
+	private float zoom = 1.0f;
+	private long version = 0;
+	private final Rectangle visibleBounds = new Rectangle();
+
+	public Camera(int worldWidth, int worldHeight, int viewportWidth, int viewportHeight) {
+		this.worldWidth = worldWidth;
+		this.worldHeight = worldHeight;
+		this.viewportWidth = viewportWidth;
+		this.viewportHeight = viewportHeight;
+		clamp();
+	}
+
+	public void apply(Graphics2D g2d) {
+		g2d.scale(zoom, zoom);
+		g2d.translate(-offsetX, -offsetY);
+	}
+
+	public void apply(AffineTransform transform) {
+		transform.scale(zoom, zoom);
+		transform.translate(-offsetX, -offsetY);
+	}
+
+	public float toWorldX(float screenX) {
+		return offsetX + screenX / zoom;
+	}
+
+	public float toWorldY(float screenY) {
+		return offsetY + screenY / zoom;
+	}
+
+	public float toScreenX(float worldX) {
+		return (worldX - offsetX) * zoom;
+	}
+
+	public float toScreenY(float worldY) {
+		return (worldY - offsetY) * zoom;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public Rectangle getVisibleBounds() {
+		int minX = (int) Math.floor(offsetX), minY = (int) Math.floor(offsetY);
+		int maxX = (int) Math.ceil(offsetX + viewportWidth / zoom);
+		int maxY = (int) Math.ceil(offsetY + viewportHeight / zoom);
+		visibleBounds.setBounds(minX, minY, maxX - minX, maxY - minY);
+		return visibleBounds;
+	}
+
+	public void pan(float screenDx, float screenDy) {
+		offsetX -= screenDx / zoom;
+		offsetY -= screenDy / zoom;
+		clamp();
+	}
+
+	public void zoomAt(float screenX, float screenY, float factor) {
+		float worldX = toWorldX(screenX), worldY = toWorldY(screenY);
+		zoom = Math.max(getMinZoom(), Math.min(zoom * factor, MAX_ZOOM));
+		offsetX = worldX - screenX / zoom;
+		offsetY = worldY - screenY / zoom;
+		clamp();
+	}
+
+	public void reset() {
+		zoom = 1.0f;
+		offsetX = 0;
+		offsetY = 0;
+		clamp();
+	}
+
+	public void setViewportSize(int width, int height) {
+		this.viewportWidth = width;
+		this.viewportHeight = height;
+		zoom = Math.max(zoom, getMinZoom());
+		clamp();
+	}
+
+	public void setWorldSize(int width, int height) {
+		this.worldWidth = width;
+		this.worldHeight = height;
+		zoom = Math.max(zoom, getMinZoom());
+		clamp();
+	}
+
+	public float getZoom() {
+		return zoom;
+	}
+
+	private float getMinZoom() {
+		return Math.min(1.0f, Math.min((float) viewportWidth / worldWidth, (float) viewportHeight / worldHeight));
+	}
+
+	private void clamp() {
+		version++;
+		offsetX = clampAxis(offsetX, worldWidth, viewportWidth / zoom);
+		offsetY = clampAxis(offsetY, worldHeight, viewportHeight / zoom);
+	}
+
+	private static float clampAxis(float offset, int worldSize, float visibleSize) {
+		if (visibleSize >= worldSize)
+			return (worldSize - visibleSize) / 2;
+		return Math.max(0, Math.min(offset, worldSize - visibleSize));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,251 @@
+package simulation.core;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+public class FrameCapture {
+	public static final int PNG_SEQUENCE = 0;
+	public static final int RAW_RGB = 1;
+
+	public static final int DROP = 0;
+	public static final int BLOCK = 1;
+
+	private static class CapturedFrame {
+		final int[] pixels;
+		final int width, height;
+		long index;
+
+		CapturedFrame(int width, int height) {
+			this.pixels = new int[width * height];
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	private static final CapturedFrame END_OF_STREAM = new CapturedFrame(0, 0);
+
+	private final File directory;
+	private final int format;
+	private final int frameInterval;
+	private final int backpressure;
+	private final BlockingQueue<CapturedFrame> pending;
+	private final BlockingQueue<CapturedFrame> recycled;
+	private final Thread[] encoders;
+	private FileChannel rawChannel;
+	private final Object lock = new Object();
+	private volatile boolean closed = false;
+
+	private long offeredFrames = 0;
+	private final AtomicLong queuedFrames = new AtomicLong();
+	private final AtomicLong droppedFrames = new AtomicLong();
+	private final AtomicLong blockedFrames = new AtomicLong();
+	private final AtomicLong blockedNanos = new AtomicLong();
+	private final AtomicLong writtenFrames = new AtomicLong();
+	private final AtomicLong failedFrames = new AtomicLong();
+
+	public FrameCapture(File directory, int format, int frameInterval, int queueCapacity, int backpressure,
+			int encoderThreads) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create capture directory " + directory);
+
+		this.directory = directory;
+		this.format = format;
+		this.frameInterval = Math.max(1, frameInterval);
+		this.backpressure = backpressure;
+		this.pending = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+
+		// A raw stream is a single ordered file, so it gets exactly one encoder
+		int threads = format == RAW_RGB ? 1 : Math.max(1, encoderThreads);
+		this.recycled = new ArrayBlockingQueue<>(Math.max(1, queueCapacity) + threads);
+		this.encoders = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			encoders[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					encodeFrames();
+				}
+			}, "frame-encoder-" + i);
+			encoders[i].setDaemon(true);
+			encoders[i].start();
+		}
+	}
+
+	public void offer(BufferedImage image) {
+		// Offers and close are serialised so no frame can be queued behind the end-of-stream markers
+		synchronized (lock) {
+			if (closed)
+				return;
+
+			enqueue(image);
+		}
+	}
+
+	private void enqueue(BufferedImage image) {
+		long index = offeredFrames++;
+		if (index % frameInterval != 0)
+			return;
+
+		int width = image.getWidth(), height = image.getHeight();
+		if (backpressure == DROP && pending.remainingCapacity() == 0) {
+			droppedFrames.incrementAndGet();
+			return;
+		}
+
+		CapturedFrame frame = obtainFrame(width, height);
+		frame.index = index / frameInterval;
+		image.getRGB(0, 0, width, height, frame.pixels, 0, width);
+
+		if (backpressure == DROP) {
+			if (!pending.offer(frame)) {
+				droppedFrames.incrementAndGet();
+				return;
+			}
+		} else if (!pending.offer(frame)) {
+			long start = System.nanoTime();
+			try {
+				pending.put(frame);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				droppedFrames.incrementAndGet();
+				return;
+			}
+			blockedFrames.incrementAndGet();
+			blockedNanos.addAndGet(System.nanoTime() - start);
+		}
+		queuedFrames.incrementAndGet();
+	}
+
+	private CapturedFrame obtainFrame(int width, int height) {
+		CapturedFrame frame = recycled.poll();
+		if (frame == null || frame.width != width || frame.height != height) {
+			frame = new CapturedFrame(width, height);
+		}
+		return frame;
+	}
+
+	private void encodeFrames() {
+		ByteBuffer rgb = null;
+		BufferedImage image = null;
+		while (true) {
+			CapturedFrame frame;
+			try {
+				frame = pending.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (frame == END_OF_STREAM)
+				return;
+
+			try {
+				if (format == RAW_RGB) {
+					int bytes = frame.width * frame.height * 3;
+					if (rgb == null || rgb.capacity() != bytes) {
+						rgb = ByteBuffer.allocateDirect(bytes);
+					}
+					writeRaw(frame, rgb);
+				} else {
+					if (image == null || image.getWidth() != frame.width || image.getHeight() != frame.height) {
+						image = new BufferedImage(frame.width, frame.height, BufferedImage.TYPE_INT_RGB);
+					}
+					image.setRGB(0, 0, frame.width, frame.height, frame.pixels, 0, frame.width);
+					ImageIO.write(image, "png", new File(directory, String.format("frame_%06d.png", frame.index)));
+				}
+				writtenFrames.incrementAndGet();
+			} catch (IOException e) {
+				failedFrames.incrementAndGet();
+			}
+			recycled.offer(frame);
+		}
+	}
+
+	private void writeRaw(CapturedFrame frame, ByteBuffer rgb) throws IOException {
+		if (rawChannel == null) {
+			File file = new File(directory, "frames_" + frame.width + "x" + frame.height + ".rgb");
+			rawChannel = new RandomAccessFile(file, "rw").getChannel();
+			rawChannel.truncate(0);
+		}
+
+		rgb.clear();
+		int[] pixels = frame.pixels;
+		for (int i = 0; i < pixels.length; i++) {
+			int pixel = pixels[i];
+			rgb.put((byte) (pixel >> 16)).put((byte) (pixel >> 8)).put((byte) pixel);
+		}
+		rgb.flip();
+		while (rgb.hasRemaining()) {
+			rawChannel.write(rgb);
+		}
+	}
+
+	public void close() {
+		try {
+			// A blocked offer holds the lock until an encoder takes its frame, so this cannot deadlock
+			synchronized (lock) {
+				if (closed)
+					return;
+
+				closed = true;
+				for (int i = 0; i < encoders.length; i++) {
+					pending.put(END_OF_STREAM);
+				}
+			}
+			for (Thread encoder : encoders) {
+				encoder.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (rawChannel != null) {
+			try {
+				rawChannel.close();
+			} catch (IOException e) {
+				failedFrames.incrementAndGet();
+			}
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getQueuedFrameCount() {
+		return queuedFrames.get();
+	}
+
+	public long getDroppedFrameCount() {
+		return droppedFrames.get();
+	}
+
+	public long getBlockedFrameCount() {
+		return blockedFrames.get();
+	}
+
+	public long getBlockedNanos() {
+		return blockedNanos.get();
+	}
+
+	public long getWrittenFrameCount() {
+		return writtenFrames.get();
+	}
+
+	public long getFailedFrameCount() {
+		return failedFrames.get();
+	}
+
+	public int getPendingFrameCount() {
+		return pending.size();
+	}
+}
\ No newline at end of file
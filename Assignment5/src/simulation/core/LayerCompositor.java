@@ -0,0 +1,394 @@
+package simulation.core;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import simulation.entities.Creature;
+import simulation.entities.Plant;
+import simulation.entities.Prey;
+import simulation.entities.SimItem;
+import simulation.env.MaliceColony;
+import simulation.env.RenderDamage;
+
+public class LayerCompositor {
+	private static final int TILE_SIZE = 64;
+	private static final float INFO_MARGIN = 150;
+	private static final float ENTITY_PADDING = 2;
+
+	private final Color background;
+
+	private BufferedImage frame;
+	private BufferedImage waterLayer;
+	private BufferedImage maliceLayer;
+	private BufferedImage connectorLayer;
+	private BufferedImage entityLayer;
+	private int[] waterPixels;
+	private int[] waterShades;
+	private int waterResolution = 1;
+	private int waterOriginX, waterOriginY;
+	private final AffineTransform waterTransform = new AffineTransform();
+
+	private int tileCols, tileRows;
+	private boolean[] dirtyTiles;
+	private boolean[] maliceTiles;
+	private boolean[] connectorTiles;
+	private int dirtyTileCount = 0;
+	private int composedTileCount = 0;
+	private int redrawnMaliceTileCount = 0;
+
+	private long cameraVersion = -1;
+	private long maliceVersion = -1;
+	private MaliceColony renderedMalice;
+	private final ArrayList<Rectangle> entityRects = new ArrayList<>();
+	private int entityRectCount = 0;
+
+	public LayerCompositor(Color background) {
+		this.background = background;
+	}
+
+	public synchronized BufferedImage compose(WaterSimulation water, MaliceColony malice, List<Plant> plants,
+			List<Prey> preys, Camera camera, int width, int height) {
+		prepare(water, malice, plants, preys, camera, width, height);
+		return present();
+	}
+
+	// Brings the layer caches up to date from the world, so the caller must hold the world lock
+	public synchronized void prepare(WaterSimulation water, MaliceColony malice, List<Plant> plants, List<Prey> preys,
+			Camera camera, int width, int height) {
+		if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+			resize(width, height);
+		}
+		if (camera.getVersion() != cameraVersion) {
+			cameraVersion = camera.getVersion();
+			maliceVersion = -1;
+			markAllDirty();
+		}
+
+		updateWaterLayer(water, camera);
+		updateMaliceLayer(malice, camera);
+		updateEntityLayer(plants, preys, camera);
+
+		int waterCellSize = water.getCellSize() * waterResolution;
+		waterTransform.setToIdentity();
+		camera.apply(waterTransform);
+		waterTransform.translate(waterOriginX * waterCellSize, waterOriginY * waterCellSize);
+		waterTransform.scale(waterCellSize, waterCellSize);
+	}
+
+	// Only reads the layer caches, so it can run without the world lock
+	public synchronized BufferedImage present() {
+		composeDirtyTiles();
+		return frame;
+	}
+
+	private void resize(int width, int height) {
+		frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		maliceLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		connectorLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		entityLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		tileCols = (width + TILE_SIZE - 1) / TILE_SIZE;
+		tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		dirtyTiles = new boolean[tileCols * tileRows];
+		maliceTiles = new boolean[tileCols * tileRows];
+		connectorTiles = new boolean[tileCols * tileRows];
+		entityRectCount = 0;
+		maliceVersion = -1;
+		markAllDirty();
+	}
+
+	private void updateWaterLayer(WaterSimulation water, Camera camera) {
+		int step = waterResolution;
+		int cellSize = water.getCellSize() * step;
+		Rectangle view = camera.getVisibleBounds();
+		int minI = Math.max(0, Math.floorDiv(view.x, cellSize));
+		int minJ = Math.max(0, Math.floorDiv(view.y, cellSize));
+		int maxI = Math.min((water.getCols() - 1) / step, Math.floorDiv(view.x + view.width, cellSize));
+		int maxJ = Math.min((water.getRows() - 1) / step, Math.floorDiv(view.y + view.height, cellSize));
+		int cols = Math.max(1, maxI - minI + 1), rows = Math.max(1, maxJ - minJ + 1);
+
+		if (waterLayer == null || waterLayer.getWidth() != cols || waterLayer.getHeight() != rows
+				|| minI != waterOriginX || minJ != waterOriginY) {
+			if (waterLayer == null || waterLayer.getWidth() != cols || waterLayer.getHeight() != rows) {
+				waterLayer = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_RGB);
+				waterPixels = ((DataBufferInt) waterLayer.getRaster().getDataBuffer()).getData();
+				waterShades = new int[cols * rows];
+			}
+			for (int i = 0; i < cols * rows; i++) {
+				waterShades[i] = -1;
+			}
+			waterOriginX = minI;
+			waterOriginY = minJ;
+			markAllDirty();
+		}
+
+		for (int j = 0; j < rows; j++) {
+			for (int i = 0; i < cols; i++) {
+				int index = i + j * cols;
+				int shade = water.getColor((minI + i) * step, (minJ + j) * step);
+				if (shade != waterShades[index]) {
+					waterShades[index] = shade;
+					waterPixels[index] = shade;
+					markWorldDirty(camera, (minI + i) * cellSize, (minJ + j) * cellSize, cellSize, cellSize);
+				}
+			}
+		}
+	}
+
+	private void updateMaliceLayer(MaliceColony malice, Camera camera) {
+		RenderDamage structure = malice.getStructureDamage();
+		RenderDamage connectors = malice.getConnectorDamage();
+		if (malice != renderedMalice || maliceVersion == -1) {
+			renderedMalice = malice;
+			Arrays.fill(maliceTiles, true);
+			Arrays.fill(connectorTiles, true);
+		} else {
+			if (malice.getRenderVersion() != maliceVersion) {
+				markDamagedTiles(maliceTiles, structure, camera);
+			}
+			markDamagedTiles(connectorTiles, connectors, camera);
+		}
+		maliceVersion = malice.getRenderVersion();
+		structure.clear();
+		connectors.clear();
+
+		redrawnMaliceTileCount = redrawTiles(maliceLayer, maliceTiles, malice, camera, false)
+				+ redrawTiles(connectorLayer, connectorTiles, malice, camera, true);
+	}
+
+	private void markDamagedTiles(boolean[] tiles, RenderDamage damage, Camera camera) {
+		if (damage.isEverything()) {
+			Arrays.fill(tiles, true);
+			return;
+		}
+
+		for (int i = 0; i < damage.size(); i++) {
+			Rectangle rect = damage.get(i);
+			int minX = (int) Math.floor(camera.toScreenX(rect.x)) - 1;
+			int minY = (int) Math.floor(camera.toScreenY(rect.y)) - 1;
+			int maxX = (int) Math.ceil(camera.toScreenX(rect.x + rect.width)) + 1;
+			int maxY = (int) Math.ceil(camera.toScreenY(rect.y + rect.height)) + 1;
+			if (maxX <= 0 || maxY <= 0 || minX >= frame.getWidth() || minY >= frame.getHeight())
+				continue;
+
+			int minTx = Math.max(0, minX / TILE_SIZE), minTy = Math.max(0, minY / TILE_SIZE);
+			int maxTx = Math.min(tileCols - 1, (maxX - 1) / TILE_SIZE);
+			int maxTy = Math.min(tileRows - 1, (maxY - 1) / TILE_SIZE);
+			for (int ty = minTy; ty <= maxTy; ty++) {
+				for (int tx = minTx; tx <= maxTx; tx++) {
+					tiles[tx + ty * tileCols] = true;
+				}
+			}
+		}
+	}
+
+	// Damaged tiles are cleared and redrawn one horizontal run at a time, clipped to the run
+	private int redrawTiles(BufferedImage layer, boolean[] tiles, MaliceColony malice, Camera camera,
+			boolean connectors) {
+		int redrawn = 0;
+		Graphics2D g2d = layer.createGraphics();
+		try {
+			AffineTransform screen = g2d.getTransform();
+			int width = layer.getWidth(), height = layer.getHeight();
+			for (int ty = 0; ty < tileRows; ty++) {
+				int tx = 0;
+				while (tx < tileCols) {
+					if (!tiles[tx + ty * tileCols]) {
+						tx++;
+						continue;
+					}
+
+					int start = tx;
+					while (tx < tileCols && tiles[tx + ty * tileCols]) {
+						tiles[tx + ty * tileCols] = false;
+						tx++;
+					}
+
+					int x = start * TILE_SIZE, y = ty * TILE_SIZE;
+					int w = Math.min(tx * TILE_SIZE, width) - x;
+					int h = Math.min(y + TILE_SIZE, height) - y;
+					g2d.setTransform(screen);
+					g2d.setClip(x, y, w, h);
+					clear(g2d, x, y, w, h);
+
+					int worldX = (int) Math.floor(camera.toWorldX(x));
+					int worldY = (int) Math.floor(camera.toWorldY(y));
+					Rectangle view = new Rectangle(worldX, worldY, (int) Math.ceil(camera.toWorldX(x + w)) - worldX,
+							(int) Math.ceil(camera.toWorldY(y + h)) - worldY);
+					camera.apply(g2d);
+					if (connectors) {
+						malice.renderConnectors(g2d, view);
+					} else {
+						malice.renderStructure(g2d, view);
+					}
+					markScreenDirty(x, y, w, h);
+					redrawn += tx - start;
+				}
+			}
+		} finally {
+			g2d.dispose();
+		}
+		return redrawn;
+	}
+
+	private void updateEntityLayer(List<Plant> plants, List<Prey> preys, Camera camera) {
+		Graphics2D g2d = entityLayer.createGraphics();
+		try {
+			for (int i = 0; i < entityRectCount; i++) {
+				Rectangle rect = entityRects.get(i);
+				clear(g2d, rect.x, rect.y, rect.width, rect.height);
+				markScreenDirty(rect.x, rect.y, rect.width, rect.height);
+			}
+			entityRectCount = 0;
+
+			camera.apply(g2d);
+			Rectangle view = camera.getVisibleBounds();
+			float margin = Creature.isInfoVisible() ? INFO_MARGIN : 0;
+			for (Plant plant : plants) {
+				if (plant.isAlive() && plant.isVisibleIn(view, margin)) {
+					plant.draw(g2d);
+					recordEntity(plant, margin, camera);
+				}
+			}
+
+			for (Prey prey : preys) {
+				if (prey.isAlive() && prey.isVisibleIn(view, margin)) {
+					prey.draw(g2d);
+					recordEntity(prey, margin, camera);
+				}
+			}
+		} finally {
+			g2d.dispose();
+		}
+	}
+
+	private void recordEntity(SimItem item, float margin, Camera camera) {
+		float extent = item.getSize() + margin + ENTITY_PADDING;
+		float x = item.getPosition().x, y = item.getPosition().y;
+		int minX = Math.max(0, (int) Math.floor(camera.toScreenX(x - extent)));
+		int minY = Math.max(0, (int) Math.floor(camera.toScreenY(y - extent)));
+		int maxX = Math.min(frame.getWidth(), (int) Math.ceil(camera.toScreenX(x + extent)));
+		int maxY = Math.min(frame.getHeight(), (int) Math.ceil(camera.toScreenY(y + extent)));
+		if (maxX <= minX || maxY <= minY)
+			return;
+
+		if (entityRectCount == entityRects.size()) {
+			entityRects.add(new Rectangle());
+		}
+		entityRects.get(entityRectCount++).setBounds(minX, minY, maxX - minX, maxY - minY);
+		markScreenDirty(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	private void composeDirtyTiles() {
+		composedTileCount = dirtyTileCount;
+		if (dirtyTileCount == 0)
+			return;
+
+		Graphics2D g2d = frame.createGraphics();
+		try {
+			AffineTransform screen = g2d.getTransform();
+			int width = frame.getWidth(), height = frame.getHeight();
+			for (int ty = 0; ty < tileRows; ty++) {
+				int tx = 0;
+				while (tx < tileCols) {
+					if (!dirtyTiles[tx + ty * tileCols]) {
+						tx++;
+						continue;
+					}
+
+					int start = tx;
+					while (tx < tileCols && dirtyTiles[tx + ty * tileCols]) {
+						dirtyTiles[tx + ty * tileCols] = false;
+						tx++;
+					}
+
+					int x = start * TILE_SIZE, y = ty * TILE_SIZE;
+					int w = Math.min(tx * TILE_SIZE, width) - x;
+					int h = Math.min(y + TILE_SIZE, height) - y;
+					g2d.setClip(x, y, w, h);
+					g2d.setColor(background);
+					g2d.fillRect(x, y, w, h);
+
+					g2d.transform(waterTransform);
+					g2d.drawImage(waterLayer, 0, 0, null);
+					g2d.setTransform(screen);
+
+					g2d.drawImage(connectorLayer, x, y, x + w, y + h, x, y, x + w, y + h, null);
+					g2d.drawImage(maliceLayer, x, y, x + w, y + h, x, y, x + w, y + h, null);
+					g2d.drawImage(entityLayer, x, y, x + w, y + h, x, y, x + w, y + h, null);
+				}
+			}
+		} finally {
+			g2d.dispose();
+		}
+		dirtyTileCount = 0;
+	}
+
+	private void markWorldDirty(Camera camera, float x, float y, float width, float height) {
+		int minX = (int) Math.floor(camera.toScreenX(x)), minY = (int) Math.floor(camera.toScreenY(y));
+		int maxX = (int) Math.ceil(camera.toScreenX(x + width)), maxY = (int) Math.ceil(camera.toScreenY(y + height));
+		markScreenDirty(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	private void markScreenDirty(int x, int y, int width, int height) {
+		int minTx = Math.max(0, x / TILE_SIZE), minTy = Math.max(0, y / TILE_SIZE);
+		int maxTx = Math.min(tileCols - 1, (x + width - 1) / TILE_SIZE);
+		int maxTy = Math.min(tileRows - 1, (y + height - 1) / TILE_SIZE);
+		if (x + width <= 0 || y + height <= 0)
+			return;
+
+		for (int ty = minTy; ty <= maxTy; ty++) {
+			for (int tx = minTx; tx <= maxTx; tx++) {
+				int index = tx + ty * tileCols;
+				if (!dirtyTiles[index]) {
+					dirtyTiles[index] = true;
+					dirtyTileCount++;
+				}
+			}
+		}
+	}
+
+	private void markAllDirty() {
+		if (dirtyTiles == null)
+			return;
+
+		for (int i = 0; i < dirtyTiles.length; i++) {
+			dirtyTiles[i] = true;
+		}
+		dirtyTileCount = dirtyTiles.length;
+	}
+
+	private static void clear(Graphics2D g2d, int x, int y, int width, int height) {
+		Composite composite = g2d.getComposite();
+		g2d.setComposite(AlphaComposite.Clear);
+		g2d.fillRect(x, y, width, height);
+		g2d.setComposite(composite);
+	}
+
+	public void setWaterResolution(int cellsPerPixel) {
+		waterResolution = Math.max(1, cellsPerPixel);
+	}
+
+	public int getWaterResolution() {
+		return waterResolution;
+	}
+
+	public int getComposedTileCount() {
+		return composedTileCount;
+	}
+
+	public int getRedrawnMaliceTileCount() {
+		return redrawnMaliceTileCount;
+	}
+
+	public int getTileCount() {
+		return dirtyTiles == null ? 0 : dirtyTiles.length;
+	}
+}
\ No newline at end of file
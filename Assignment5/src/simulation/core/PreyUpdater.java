@@ -0,0 +1,84 @@
+package simulation.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import simulation.entities.Plant;
+import simulation.entities.Prey;
+
+public class PreyUpdater {
+	private static final int SPLIT_THRESHOLD = 8;
+
+	private final ForkJoinPool pool;
+	private final ArrayList<Prey> active;
+
+	public PreyUpdater() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public PreyUpdater(int parallelism) {
+		this.pool = new ForkJoinPool(Math.max(1, parallelism));
+		this.active = new ArrayList<>();
+	}
+
+	public void update(List<Prey> preys, List<Plant> livePlants, List<Prey> deadPreys) {
+		active.clear();
+		for (Prey prey : preys) {
+			prey.publishState();
+			if (prey.isAlive()) {
+				active.add(prey);
+			} else {
+				deadPreys.add(prey);
+			}
+		}
+
+		if (active.size() > SPLIT_THRESHOLD && pool.getParallelism() > 1) {
+			pool.invoke(new SenseTask(active, livePlants, 0, active.size()));
+		} else {
+			for (Prey prey : active) {
+				prey.sense(livePlants);
+			}
+		}
+
+		for (Prey prey : active) {
+			prey.act();
+		}
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private static class SenseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Prey> preys;
+		private final List<Plant> plants;
+		private final int from, to;
+
+		SenseTask(List<Prey> preys, List<Plant> plants, int from, int to) {
+			this.preys = preys;
+			this.plants = plants;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SPLIT_THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					preys.get(i).sense(plants);
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new SenseTask(preys, plants, from, mid), new SenseTask(preys, plants, mid, to));
+		}
+	}
+}
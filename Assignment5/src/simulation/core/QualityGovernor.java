@@ -0,0 +1,82 @@
+package simulation.core;
+
+public class QualityGovernor {
+	public static final int FULL = 0;
+	public static final int REDUCED_FRACTALS = 1;
+	public static final int NO_OVERLAYS = 2;
+	public static final int COARSE_WATER = 3;
+
+	private static final float SMOOTHING = 0.1f;
+	private static final float DEGRADE_LOAD = 0.9f;
+	private static final float RESTORE_LOAD = 0.5f;
+	private static final int DEGRADE_TICKS = 10;
+	private static final int RESTORE_TICKS = 90;
+
+	private final long budgetNanos;
+	private float averageTickNanos = 0;
+	private float averageRenderNanos = 0;
+	private int level = FULL;
+	private int overBudgetTicks = 0;
+	private int underBudgetTicks = 0;
+	private boolean enabled = true;
+
+	public QualityGovernor(long budgetNanos) {
+		this.budgetNanos = budgetNanos;
+	}
+
+	public int update(long tickNanos, long renderNanos) {
+		averageTickNanos += (tickNanos - averageTickNanos) * SMOOTHING;
+		averageRenderNanos += (renderNanos - averageRenderNanos) * SMOOTHING;
+		if (!enabled)
+			return level;
+
+		// Ticks and frames take turns on the world lock, so their costs add up
+		float load = getLoad();
+		if (load > DEGRADE_LOAD) {
+			underBudgetTicks = 0;
+			if (++overBudgetTicks >= DEGRADE_TICKS && level < COARSE_WATER) {
+				level++;
+				overBudgetTicks = 0;
+			}
+		} else if (load < RESTORE_LOAD) {
+			overBudgetTicks = 0;
+			if (++underBudgetTicks >= RESTORE_TICKS && level > FULL) {
+				level--;
+				underBudgetTicks = 0;
+			}
+		} else {
+			overBudgetTicks = 0;
+			underBudgetTicks = 0;
+		}
+		return level;
+	}
+
+	public float getLoad() {
+		return (averageTickNanos + averageRenderNanos) / budgetNanos;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled) {
+			level = FULL;
+		}
+		overBudgetTicks = 0;
+		underBudgetTicks = 0;
+	}
+
+	public float getAverageTickNanos() {
+		return averageTickNanos;
+	}
+
+	public float getAverageRenderNanos() {
+		return averageRenderNanos;
+	}
+}
\ No newline at end of file
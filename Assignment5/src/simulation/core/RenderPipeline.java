@@ -0,0 +1,158 @@
+package simulation.core;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RenderPipeline {
+	public interface FramePainter {
+		void paintFrame(Graphics2D g2d, int width, int height);
+	}
+
+	private static class Frame {
+		BufferedImage image;
+		long sequence;
+	}
+
+	private final FramePainter painter;
+	private final Runnable frameReady;
+	private final ScheduledExecutorService worker;
+	private final AtomicBoolean dirty = new AtomicBoolean(false);
+	private final Runnable frameTask = new Runnable() {
+		@Override
+		public void run() {
+			if (dirty.getAndSet(false)) {
+				renderFrame();
+			} else {
+				skippedFrames++;
+			}
+		}
+	};
+	private ScheduledFuture<?> frameSchedule;
+	private int targetFps = DEFAULT_TARGET_FPS;
+	private final AtomicReference<Frame> ready = new AtomicReference<>(new Frame());
+	private Frame front = new Frame();
+	private Frame back = new Frame();
+	private long nextSequence = 1;
+	private volatile int width, height;
+	private volatile long lastRenderNanos = 0;
+	private volatile long renderedFrames = 0;
+	private volatile long skippedFrames = 0;
+	private volatile FrameCapture capture;
+
+	private static final int DEFAULT_TARGET_FPS = 60;
+
+	public RenderPipeline(FramePainter painter, Runnable frameReady) {
+		this.painter = painter;
+		this.frameReady = frameReady;
+		this.worker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "render-worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduleFrames();
+	}
+
+	public void setSize(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	public void invalidate() {
+		dirty.set(true);
+	}
+
+	public synchronized void setTargetFps(int fps) {
+		int clamped = Math.max(1, fps);
+		if (clamped != targetFps) {
+			targetFps = clamped;
+			scheduleFrames();
+		}
+	}
+
+	public synchronized int getTargetFps() {
+		return targetFps;
+	}
+
+	private synchronized void scheduleFrames() {
+		if (frameSchedule != null) {
+			frameSchedule.cancel(false);
+		}
+		long period = 1_000_000_000L / targetFps;
+		frameSchedule = worker.scheduleAtFixedRate(frameTask, 0, period, TimeUnit.NANOSECONDS);
+	}
+
+	private void renderFrame() {
+		int frameWidth = width, frameHeight = height;
+		if (frameWidth <= 0 || frameHeight <= 0) {
+			dirty.set(true);
+			return;
+		}
+
+		if (back.image == null || back.image.getWidth() != frameWidth || back.image.getHeight() != frameHeight) {
+			back.image = new BufferedImage(frameWidth, frameHeight, BufferedImage.TYPE_INT_RGB);
+		}
+
+		long start = System.nanoTime();
+		Graphics2D g2d = back.image.createGraphics();
+		try {
+			painter.paintFrame(g2d, frameWidth, frameHeight);
+		} finally {
+			g2d.dispose();
+		}
+		lastRenderNanos = System.nanoTime() - start;
+		renderedFrames++;
+
+		FrameCapture frameCapture = capture;
+		if (frameCapture != null) {
+			frameCapture.offer(back.image);
+		}
+
+		back.sequence = nextSequence++;
+		back = ready.getAndSet(back);
+		frameReady.run();
+	}
+
+	public void paint(Graphics g) {
+		if (ready.get().sequence > front.sequence) {
+			front = ready.getAndSet(front);
+		}
+		if (front.image != null) {
+			g.drawImage(front.image, 0, 0, null);
+		}
+	}
+
+	public void setCapture(FrameCapture capture) {
+		this.capture = capture;
+	}
+
+	public FrameCapture getCapture() {
+		return capture;
+	}
+
+	public long getLastRenderNanos() {
+		return lastRenderNanos;
+	}
+
+	public long getRenderedFrameCount() {
+		return renderedFrames;
+	}
+
+	public long getSkippedFrameCount() {
+		return skippedFrames;
+	}
+
+	public void shutdown() {
+		worker.shutdownNow();
+	}
+}
\ No newline at end of file
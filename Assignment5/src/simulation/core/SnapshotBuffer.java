@@ -0,0 +1,156 @@
+package simulation.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class SnapshotBuffer {
+	private ByteBuffer buffer;
+
+	public SnapshotBuffer(int capacity) {
+		this.buffer = ByteBuffer.allocateDirect(Math.max(64, capacity));
+	}
+
+	private SnapshotBuffer(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public static SnapshotBuffer read(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Snapshot too large: " + file);
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0)
+					throw new IOException("Unexpected end of snapshot: " + file);
+			}
+			buffer.flip();
+			return new SnapshotBuffer(buffer);
+		}
+	}
+
+	public void writeTo(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer data = buffer.duplicate();
+			data.flip();
+			while (data.hasRemaining()) {
+				channel.write(data);
+			}
+		}
+	}
+
+	public int size() {
+		return buffer.position();
+	}
+
+	private void ensureCapacity(int bytes) {
+		if (buffer.remaining() >= bytes)
+			return;
+
+		int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+		ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+		buffer.flip();
+		grown.put(buffer);
+		buffer = grown;
+	}
+
+	public void putInt(int value) {
+		ensureCapacity(4);
+		buffer.putInt(value);
+	}
+
+	public void putLong(long value) {
+		ensureCapacity(8);
+		buffer.putLong(value);
+	}
+
+	public void putFloat(float value) {
+		ensureCapacity(4);
+		buffer.putFloat(value);
+	}
+
+	public void putDouble(double value) {
+		ensureCapacity(8);
+		buffer.putDouble(value);
+	}
+
+	public void putBoolean(boolean value) {
+		ensureCapacity(1);
+		buffer.put(value ? (byte) 1 : (byte) 0);
+	}
+
+	public void putBytes(byte[] values, int offset, int length) {
+		ensureCapacity(length);
+		buffer.put(values, offset, length);
+	}
+
+	public void putInts(int[] values, int offset, int length) {
+		ensureCapacity(length * 4);
+		buffer.asIntBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * 4);
+	}
+
+	public void putLongs(long[] values, int offset, int length) {
+		ensureCapacity(length * 8);
+		buffer.asLongBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * 8);
+	}
+
+	public void putFloats(float[] values, int offset, int length) {
+		ensureCapacity(length * 4);
+		buffer.asFloatBuffer().put(values, offset, length);
+		buffer.position(buffer.position() + length * 4);
+	}
+
+	public int getInt() {
+		return buffer.getInt();
+	}
+
+	// Rejects counts that the remaining bytes could not possibly hold, before anything is allocated for them
+	public int getCount(int bytesPerItem) {
+		int count = buffer.getInt();
+		if (count < 0 || (long) count * bytesPerItem > buffer.remaining())
+			throw new IllegalArgumentException("Invalid snapshot count " + count);
+		return count;
+	}
+
+	public long getLong() {
+		return buffer.getLong();
+	}
+
+	public float getFloat() {
+		return buffer.getFloat();
+	}
+
+	public double getDouble() {
+		return buffer.getDouble();
+	}
+
+	public boolean getBoolean() {
+		return buffer.get() != 0;
+	}
+
+	public void getBytes(byte[] values, int offset, int length) {
+		buffer.get(values, offset, length);
+	}
+
+	public void getInts(int[] values, int offset, int length) {
+		buffer.asIntBuffer().get(values, offset, length);
+		buffer.position(buffer.position() + length * 4);
+	}
+
+	public void getLongs(long[] values, int offset, int length) {
+		buffer.asLongBuffer().get(values, offset, length);
+		buffer.position(buffer.position() + length * 8);
+	}
+
+	public void getFloats(float[] values, int offset, int length) {
+		buffer.asFloatBuffer().get(values, offset, length);
+		buffer.position(buffer.position() + length * 4);
+	}
+}
\ No newline at end of file
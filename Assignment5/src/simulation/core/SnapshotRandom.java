@@ -0,0 +1,41 @@
+package simulation.core;
+
+import java.util.Random;
+
+public class SnapshotRandom extends Random {
+	private static final long serialVersionUID = 1L;
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	// Assigned from Random's constructor through setSeed, so it must not have an initializer
+	private long state;
+
+	public SnapshotRandom() {
+		super();
+	}
+
+	public SnapshotRandom(long seed) {
+		super(seed);
+	}
+
+	@Override
+	public synchronized void setSeed(long seed) {
+		super.setSeed(seed);
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	@Override
+	protected int next(int bits) {
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+
+	public long getState() {
+		return state;
+	}
+
+	public void setState(long state) {
+		this.state = state & MASK;
+	}
+}
\ No newline at end of file
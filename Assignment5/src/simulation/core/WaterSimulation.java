@@ -3,11 +3,31 @@ package simulation.core;
 import processing.core.PApplet;
 
 import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 public class WaterSimulation {
+	private static final int CHUNK_SHIFT = 6;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final float QUIET_EPSILON = 1e-4f;
+	private static final int QUIET_TICKS = 60;
+
+	private static class Chunk {
+		float[] current = new float[CHUNK_SIZE * CHUNK_SIZE];
+		float[] previous = new float[CHUNK_SIZE * CHUNK_SIZE];
+		int quietTicks = 0;
+		boolean occupied = false;
+	}
+
 	private int cellSize;
 	private int cols, rows;
-	private float[][] current, previous;
+	private int chunkCols, chunkRows;
+	private Chunk[] chunks;
+	private final ArrayList<Chunk> freeChunks = new ArrayList<>();
+	private boolean[] pendingLoads;
+	private int loadedChunks = 0;
 	private float damping = 0.95f;
 	private PApplet noiseGenerator;
 	private int disturbanceRadius = 1;
@@ -18,9 +38,10 @@ public class WaterSimulation {
 		noiseGenerator = new PApplet();
 		cols = width / cellSize;
 		rows = height / cellSize;
-		current = new float[cols][rows];
-		previous = new float[cols][rows];
-
+		chunkCols = (cols + CHUNK_MASK) >> CHUNK_SHIFT;
+		chunkRows = (rows + CHUNK_MASK) >> CHUNK_SHIFT;
+		chunks = new Chunk[chunkCols * chunkRows];
+		pendingLoads = new boolean[chunkCols * chunkRows];
 	}
 
 	private void initializeWaves() {
@@ -28,19 +49,26 @@ public class WaterSimulation {
 			for (int j = 0; j < rows; j++) {
 				float n = noiseGenerator.noise(i * 0.1f, j * 0.1f);
 				float value = PApplet.map(n, 0, 1, -10, 10);
-				current[i][j] = value;
-				previous[i][j] = value;
+				Chunk chunk = loadChunk(i, j);
+				chunk.current[localIndex(i, j)] = value;
+				chunk.previous[localIndex(i, j)] = value;
 			}
 		}
 	}
 
 	public void render(Graphics2D g2d) {
-		int cols = getCols();
-		int rows = getRows();
+		render(g2d, new Rectangle(0, 0, cols * cellSize, rows * cellSize));
+	}
+
+	public void render(Graphics2D g2d, Rectangle view) {
 		int cellSize = getCellSize();
+		int minI = Math.max(0, Math.floorDiv(view.x, cellSize));
+		int maxI = Math.min(getCols() - 1, Math.floorDiv(view.x + view.width, cellSize));
+		int minJ = Math.max(0, Math.floorDiv(view.y, cellSize));
+		int maxJ = Math.min(getRows() - 1, Math.floorDiv(view.y + view.height, cellSize));
 
-		for (int i = 0; i < cols; i++) {
-			for (int j = 0; j < rows; j++) {
+		for (int i = minI; i <= maxI; i++) {
+			for (int j = minJ; j <= maxJ; j++) {
 				int x = i * cellSize;
 				int y = j * cellSize;
 				float h = getWaterHeight(i, j);
@@ -52,30 +80,221 @@ public class WaterSimulation {
 		}
 	}
 
+	public int getColor(int i, int j) {
+		int blue = (int) (200 + getWaterHeight(i, j) * 10);
+		return Math.max(0, Math.min(blue, 255));
+	}
+
 	public void update() {
 		frameCounter++;
-		for (int i = 1; i < cols - 1; i++) {
-			for (int j = 1; j < rows - 1; j++) {
-				current[i][j] = ((previous[i - 1][j] + previous[i + 1][j] + previous[i][j - 1] + previous[i][j + 1])
-						/ 2) - current[i][j];
-				current[i][j] *= damping;
+		for (int c = 0; c < chunks.length; c++) {
+			if (chunks[c] != null) {
+				updateChunk(c, chunks[c]);
+			}
+		}
 
+		for (int c = 0; c < chunks.length; c++) {
+			Chunk chunk = chunks[c];
+			if (chunk != null) {
+				float[] temp = chunk.previous;
+				chunk.previous = chunk.current;
+				chunk.current = temp;
+				if (chunk.quietTicks >= QUIET_TICKS && !chunk.occupied) {
+					unloadChunk(c);
+				} else {
+					chunk.occupied = false;
+				}
+			} else if (pendingLoads[c]) {
+				chunks[c] = obtainChunk();
+			}
+			pendingLoads[c] = false;
+		}
+	}
+
+	private void updateChunk(int c, Chunk chunk) {
+		int baseI = (c % chunkCols) << CHUNK_SHIFT, baseJ = (c / chunkCols) << CHUNK_SHIFT;
+		int minX = Math.max(1, baseI) - baseI, maxX = Math.min(cols - 1, baseI + CHUNK_SIZE) - baseI;
+		int minY = Math.max(1, baseJ) - baseJ, maxY = Math.min(rows - 1, baseJ + CHUNK_SIZE) - baseJ;
+		int innerMinX = Math.max(minX, 1), innerMaxX = Math.min(maxX, CHUNK_MASK);
+		float[] current = chunk.current, previous = chunk.previous;
+		float peak = 0;
+
+		for (int y = minY; y < maxY; y++) {
+			if (y == 0 || y == CHUNK_MASK) {
+				for (int x = minX; x < maxX; x++) {
+					peak = Math.max(peak, Math.abs(updateBorderCell(current, baseI + x, baseJ + y)));
+				}
+				continue;
+			}
+
+			if (minX == 0) {
+				peak = Math.max(peak, Math.abs(updateBorderCell(current, baseI, baseJ + y)));
+			}
+			for (int x = innerMinX, index = innerMinX + (y << CHUNK_SHIFT); x < innerMaxX; x++, index++) {
+				float value = ((previous[index - 1] + previous[index + 1] + previous[index - CHUNK_SIZE]
+						+ previous[index + CHUNK_SIZE]) / 2 - current[index]) * damping;
+				current[index] = value;
+				if (value > peak) {
+					peak = value;
+				} else if (-value > peak) {
+					peak = -value;
+				}
+			}
+			if (maxX == CHUNK_SIZE) {
+				peak = Math.max(peak, Math.abs(updateBorderCell(current, baseI + CHUNK_MASK, baseJ + y)));
+			}
+		}
+
+		chunk.quietTicks = peak < QUIET_EPSILON ? chunk.quietTicks + 1 : 0;
+
+		// Waves reaching a border wake the chunk across it before they cross
+		int cx = c % chunkCols, cy = c / chunkCols;
+		if (cx > 0 && edgePeak(current, 0, CHUNK_SIZE) >= QUIET_EPSILON)
+			pendingLoads[c - 1] = true;
+		if (cx < chunkCols - 1 && edgePeak(current, CHUNK_MASK, CHUNK_SIZE) >= QUIET_EPSILON)
+			pendingLoads[c + 1] = true;
+		if (cy > 0 && edgePeak(current, 0, 1) >= QUIET_EPSILON)
+			pendingLoads[c - chunkCols] = true;
+		if (cy < chunkRows - 1 && edgePeak(current, CHUNK_MASK << CHUNK_SHIFT, 1) >= QUIET_EPSILON)
+			pendingLoads[c + chunkCols] = true;
+	}
+
+	private float updateBorderCell(float[] current, int i, int j) {
+		int index = localIndex(i, j);
+		float value = ((previousAt(i - 1, j) + previousAt(i + 1, j) + previousAt(i, j - 1) + previousAt(i, j + 1)) / 2
+				- current[index]) * damping;
+		current[index] = value;
+		return value;
+	}
+
+	private static float edgePeak(float[] values, int start, int stride) {
+		float peak = 0;
+		for (int k = 0, index = start; k < CHUNK_SIZE; k++, index += stride) {
+			peak = Math.max(peak, Math.abs(values[index]));
+		}
+		return peak;
+	}
+
+	private float previousAt(int i, int j) {
+		Chunk chunk = chunks[chunkIndex(i, j)];
+		return chunk == null ? 0 : chunk.previous[localIndex(i, j)];
+	}
+
+	private int chunkIndex(int i, int j) {
+		return (i >> CHUNK_SHIFT) + (j >> CHUNK_SHIFT) * chunkCols;
+	}
+
+	private static int localIndex(int i, int j) {
+		return (i & CHUNK_MASK) + ((j & CHUNK_MASK) << CHUNK_SHIFT);
+	}
+
+	private Chunk loadChunk(int i, int j) {
+		int c = chunkIndex(i, j);
+		if (chunks[c] == null) {
+			chunks[c] = obtainChunk();
+		}
+		return chunks[c];
+	}
+
+	private Chunk obtainChunk() {
+		loadedChunks++;
+		if (freeChunks.isEmpty())
+			return new Chunk();
+
+		Chunk chunk = freeChunks.remove(freeChunks.size() - 1);
+		Arrays.fill(chunk.current, 0);
+		Arrays.fill(chunk.previous, 0);
+		chunk.quietTicks = 0;
+		chunk.occupied = false;
+		return chunk;
+	}
+
+	private void unloadChunk(int c) {
+		freeChunks.add(chunks[c]);
+		chunks[c] = null;
+		loadedChunks--;
+	}
+
+	public void writeSnapshot(SnapshotBuffer out) {
+		out.putInt(cols);
+		out.putInt(rows);
+		out.putInt(cellSize);
+		out.putFloat(damping);
+		out.putInt(disturbanceRadius);
+		out.putInt(frameCounter);
+		out.putInt(loadedChunks);
+		for (int c = 0; c < chunks.length; c++) {
+			Chunk chunk = chunks[c];
+			if (chunk != null) {
+				out.putInt(c);
+				out.putInt(chunk.quietTicks);
+				out.putBoolean(chunk.occupied);
+				out.putFloats(chunk.current, 0, chunk.current.length);
+				out.putFloats(chunk.previous, 0, chunk.previous.length);
+			}
+		}
+	}
+
+	public void readSnapshot(SnapshotBuffer in) throws IOException {
+		if (in.getInt() != cols || in.getInt() != rows || in.getInt() != cellSize)
+			throw new IOException("Snapshot water grid does not match this world");
+
+		damping = in.getFloat();
+		disturbanceRadius = in.getInt();
+		frameCounter = in.getInt();
+		for (int c = 0; c < chunks.length; c++) {
+			if (chunks[c] != null) {
+				unloadChunk(c);
+			}
+			pendingLoads[c] = false;
+		}
+
+		int count = in.getCount(4);
+		for (int k = 0; k < count; k++) {
+			int c = in.getInt();
+			if (c < 0 || c >= chunks.length || chunks[c] != null)
+				throw new IOException("Corrupt water chunk index " + c);
+
+			Chunk chunk = obtainChunk();
+			chunk.quietTicks = in.getInt();
+			chunk.occupied = in.getBoolean();
+			in.getFloats(chunk.current, 0, chunk.current.length);
+			in.getFloats(chunk.previous, 0, chunk.previous.length);
+			chunks[c] = chunk;
+		}
+	}
+
+	public void markOccupied(float x, float y) {
+		int i = (int) x / cellSize, j = (int) y / cellSize;
+		if (i >= 0 && i < cols && j >= 0 && j < rows) {
+			Chunk chunk = chunks[chunkIndex(i, j)];
+			if (chunk != null) {
+				chunk.occupied = true;
 			}
 		}
-		float[][] temp = previous;
-		previous = current;
-		current = temp;
 	}
 
 	public void createDisturbance(int mouseX, int mouseY) {
+		createDisturbance(mouseX, mouseY, disturbanceRadius);
+	}
+
+	public void createDisturbance(int mouseX, int mouseY, int radius) {
 		int i = mouseX / cellSize;
 		int j = mouseY / cellSize;
-		for (int di = -disturbanceRadius; di <= disturbanceRadius; di++) {
-			for (int dj = -disturbanceRadius; dj <= disturbanceRadius; dj++) {
+		for (int di = -radius; di <= radius; di++) {
+			for (int dj = -radius; dj <= radius; dj++) {
 				int ii = i + di;
 				int jj = j + dj;
 				if (ii > 0 && ii < cols - 1 && jj > 0 && jj < rows - 1) {
-					previous[ii][jj] = -10;
+					Chunk chunk = loadChunk(ii, jj);
+					chunk.previous[localIndex(ii, jj)] = -10;
+					chunk.quietTicks = 0;
+					if (((ii + 1) & CHUNK_MASK) <= 1 || ((jj + 1) & CHUNK_MASK) <= 1) {
+						loadChunk(ii - 1, jj);
+						loadChunk(ii + 1, jj);
+						loadChunk(ii, jj - 1);
+						loadChunk(ii, jj + 1);
+					}
 				}
 			}
 		}
@@ -99,7 +318,28 @@ public class WaterSimulation {
 	}
 
 	public float getWaterHeight(int i, int j) {
-		return current[i][j];
+		Chunk chunk = chunks[chunkIndex(i, j)];
+		return chunk == null ? 0 : chunk.current[localIndex(i, j)];
+	}
+
+	public int getWidth() {
+		return cols * cellSize;
+	}
+
+	public int getHeight() {
+		return rows * cellSize;
+	}
+
+	public int getLoadedChunkCount() {
+		return loadedChunks;
+	}
+
+	public int getChunkCount() {
+		return chunks.length;
+	}
+
+	public int getDisturbanceRadius() {
+		return disturbanceRadius;
 	}
 
 	public void setDisturbanceRadius(int radius) {
@@ -1,19 +1,94 @@
 package simulation.core;
 
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import javax.swing.*;
 
 public class WaterSystemApp extends JFrame {
-	public WaterSystemApp(String title) {
+	private static final int WINDOW_WIDTH = 1400;
+	private static final int WINDOW_HEIGHT = 700;
+	private static final int SIDEBAR_WIDTH = 200;
+	private static final int HEADLESS_QUEUE_CAPACITY = 16;
+
+	private static String seed;
+	private static File restoreFile;
+
+	public WaterSystemApp(String title, Dimension worldSize) {
 		super(title);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		this.setSize(1400, 700);
+		this.setSize(WINDOW_WIDTH, WINDOW_HEIGHT);
 
-		WaterSystemPanel panel = new WaterSystemPanel(this.getSize());
+		WaterSystemPanel panel = createPanel(this.getSize(), worldSize);
 		add(panel);
 		setVisible(true);
+		panel.startSimulation();
 	}
 
+	private static WaterSystemPanel createPanel(Dimension size, Dimension worldSize) {
+		WaterSystemPanel panel = seed != null ? new WaterSystemPanel(size, worldSize, Long.parseLong(seed))
+				: new WaterSystemPanel(size, worldSize);
+		if (restoreFile != null) {
+			try {
+				panel.loadSnapshot(restoreFile);
+			} catch (IOException e) {
+				System.err.println("Cannot restore snapshot: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		return panel;
+	}
+
+	// Usage: [--world <width>x<height>] [--seed <n>] [--restore <snapshot>]
+	// [--headless <ticks> <output dir> [png|raw] [every k-th frame]]
 	public static void main(String[] args) {
-		new WaterSystemApp("Water Ecosystem Simulation");
+		Dimension worldSize = new Dimension(WINDOW_WIDTH - SIDEBAR_WIDTH, WINDOW_HEIGHT);
+		ArrayList<String> remaining = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--world") && i + 1 < args.length) {
+				String[] parts = args[++i].split("x");
+				worldSize = new Dimension(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+			} else if (args[i].equals("--seed") && i + 1 < args.length) {
+				seed = args[++i];
+			} else if (args[i].equals("--restore") && i + 1 < args.length) {
+				restoreFile = new File(args[++i]);
+			} else {
+				remaining.add(args[i]);
+			}
+		}
+
+		if (!remaining.isEmpty() && remaining.get(0).equals("--headless")) {
+			runHeadless(remaining.toArray(new String[0]), worldSize);
+			return;
+		}
+		new WaterSystemApp("Water Ecosystem Simulation", worldSize);
+	}
+
+	private static void runHeadless(String[] args, Dimension worldSize) {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length < 3) {
+			System.err.println("Usage: --headless <ticks> <output dir> [png|raw] [frame interval]");
+			System.exit(1);
+		}
+
+		int ticks = Integer.parseInt(args[1]);
+		int format = args.length > 3 && args[3].equals("raw") ? FrameCapture.RAW_RGB : FrameCapture.PNG_SEQUENCE;
+		int interval = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+		try {
+			FrameCapture capture = new FrameCapture(new File(args[2]), format, interval, HEADLESS_QUEUE_CAPACITY,
+					FrameCapture.BLOCK, Runtime.getRuntime().availableProcessors());
+			WaterSystemPanel panel = createPanel(new Dimension(WINDOW_WIDTH, WINDOW_HEIGHT), worldSize);
+			long start = System.nanoTime();
+			panel.runHeadless(ticks, capture);
+			System.out.println(ticks + " ticks in " + (System.nanoTime() - start) / 1000000 + " ms, "
+					+ capture.getWrittenFrameCount() + " frames written, " + capture.getBlockedFrameCount()
+					+ " blocked");
+		} catch (IOException e) {
+			System.err.println("Cannot start capture: " + e.getMessage());
+			System.exit(1);
+		}
+		System.exit(0);
 	}
 }
\ No newline at end of file
@@ -4,28 +4,43 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.Area;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.Random;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import processing.core.PVector;
 import simulation.entities.Creature;
 import simulation.entities.Plant;
 import simulation.entities.Prey;
+import simulation.entities.PreyNeighborList;
+import simulation.entities.SimItem;
+import simulation.env.BitsetMalice;
 import simulation.env.Malice;
+import simulation.env.MaliceColony;
 import simulation.ui.SidebarPanel;
 
 public class WaterSystemPanel extends JPanel implements ActionListener, KeyListener {
-	private final WaterSimulation waterSimulation;
+	private WaterSimulation waterSimulation;
 	private Timer WaterAnimationTimer;
 	private SidebarPanel sidebarPanel;
 	private int simulationWidth;
+	private int worldWidth, worldHeight;
 
-	private Malice malice;
+	private MaliceColony malice;
 	private ArrayList<Plant> plants;
 	private ArrayList<Prey> preys;
-	private Random random;
+	private List<Prey> preyView;
+	private PreyNeighborList preyNeighbors;
+	private SnapshotRandom random;
+	private final boolean deterministic;
 
 	private ArrayList<Plant> plantsToRemove;
+	private ArrayList<Plant> livePlants;
+	private PreyUpdater preyUpdater;
 
 	private ArrayList<Plant> userPlants;
 	private ArrayList<Prey> userPreys;
@@ -33,13 +48,51 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 	private static final int DEFAULT_PLANT_COUNT = 6;
 	private static final int DEFAULT_PREY_COUNT = 3;
 
-	private Point mousePosition = new Point(0, 0);
+	private volatile Point mousePosition = new Point(0, 0);
+	private Camera camera;
+	private JPanel simulationView;
+	private RenderPipeline renderPipeline;
+	private LayerCompositor compositor;
+	private QualityGovernor qualityGovernor;
+	private int appliedQuality = QualityGovernor.FULL;
+	private volatile long lastComposeNanos = 0;
+	private final ConcurrentLinkedQueue<Runnable> pendingInput = new ConcurrentLinkedQueue<>();
+	private final Object worldLock = new Object();
+
+	private static final int TICK_MILLIS = 30;
+	private static final int REDUCED_FRACTAL_DEPTH = 2;
+	private static final int COARSE_WATER_RESOLUTION = 2;
+	private static final int CAPTURE_QUEUE_CAPACITY = 32;
+	private static final int CAPTURE_ENCODER_THREADS = 2;
+
+	private static final int SNAPSHOT_MAGIC = 0x57455353;
+	private static final int SNAPSHOT_VERSION = 2;
+	private static final int SNAPSHOT_CAPACITY = 1 << 20;
+	private static final File SNAPSHOT_FILE = new File("ecosystem.snap");
+
+	private static final float ZOOM_STEP = 1.1f;
+	private static final int CAMERA_PAN_STEP = 40;
 
 	public WaterSystemPanel(Dimension size) {
+		this(size, new Dimension(size.width - 200, size.height));
+	}
+
+	public WaterSystemPanel(Dimension size, Dimension worldSize) {
+		this(size, worldSize, new SnapshotRandom(), false);
+	}
+
+	// Seeded runs step Malice with a fixed delta time so that a restored snapshot replays identically
+	public WaterSystemPanel(Dimension size, Dimension worldSize, long seed) {
+		this(size, worldSize, new SnapshotRandom(seed), true);
+	}
+
+	private WaterSystemPanel(Dimension size, Dimension worldSize, SnapshotRandom random, boolean deterministic) {
 		super();
 		setSize(size);
 		setPreferredSize(size);
-		random = new Random();
+		this.random = random;
+		this.deterministic = deterministic;
+		SimItem.setSeedSource(deterministic ? random : null);
 
 		setLayout(new BorderLayout());
 
@@ -47,20 +100,66 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 			@Override
 			protected void paintComponent(Graphics g) {
 				super.paintComponent(g);
-				renderSimulation((Graphics2D) g);
+				renderPipeline.paint(g);
 			}
 		};
 		simulationPanel.setPreferredSize(new Dimension(size.width - 200, size.height));
+		simulationView = simulationPanel;
+		compositor = new LayerCompositor(simulationPanel.getBackground());
+
+		renderPipeline = new RenderPipeline(new RenderPipeline.FramePainter() {
+			@Override
+			public void paintFrame(Graphics2D g2d, int width, int height) {
+				// Only reading the world into the layer caches needs the lock, the tiles are composed after it
+				synchronized (worldLock) {
+					// Timed after the lock is taken so a frame that waited on a tick does not count that wait
+					long start = System.nanoTime();
+					compositor.prepare(waterSimulation, malice, plants, preys, camera, width, height);
+					lastComposeNanos = System.nanoTime() - start;
+				}
+				g2d.drawImage(compositor.present(), 0, 0, null);
+				if (sidebarDragging) {
+					drawDragPreview(g2d, sidebarDragType, mousePosition);
+				}
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				simulationPanel.repaint();
+			}
+		});
+
+		simulationPanel.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				final int width = simulationPanel.getWidth(), height = simulationPanel.getHeight();
+				postInput(new Runnable() {
+					@Override
+					public void run() {
+						camera.setViewportSize(width, height);
+					}
+				});
+				renderPipeline.setSize(simulationPanel.getWidth(), simulationPanel.getHeight());
+				requestRender();
+			}
+		});
 
 		simulationPanel.addMouseListener(new MouseAdapter() {
 			@Override
 			public void mousePressed(MouseEvent e) {
-				if (e.getButton() == MouseEvent.BUTTON1) {
-					waterSimulation.createDisturbance(e.getX(), e.getY());
-				} else if (e.getButton() == MouseEvent.BUTTON3) {
+				final int button = e.getButton();
+				final int x = toWorldX(e.getX()), y = toWorldY(e.getY());
+				postInput(new Runnable() {
+					@Override
+					public void run() {
+						if (button == MouseEvent.BUTTON1) {
+							waterSimulation.createDisturbance(x, y);
+						} else if (button == MouseEvent.BUTTON3) {
 
-					handleRightClick(e.getX(), e.getY());
-				}
+							handleRightClick(x, y);
+						}
+					}
+				});
 			}
 		});
 
@@ -68,17 +167,44 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 			@Override
 			public void mouseMoved(MouseEvent e) {
 				mousePosition = e.getPoint();
-				repaint();
 			}
 
 			@Override
 			public void mouseDragged(MouseEvent e) {
+				Point previous = mousePosition;
 				mousePosition = e.getPoint();
 
 				if ((e.getModifiersEx() & MouseEvent.BUTTON1_DOWN_MASK) != 0) {
-					waterSimulation.createDisturbance(e.getX(), e.getY());
+					final int x = toWorldX(e.getX()), y = toWorldY(e.getY());
+					postInput(new Runnable() {
+						@Override
+						public void run() {
+							waterSimulation.createDisturbance(x, y);
+						}
+					});
+				} else if ((e.getModifiersEx() & MouseEvent.BUTTON2_DOWN_MASK) != 0) {
+					final int dx = e.getX() - previous.x, dy = e.getY() - previous.y;
+					postInput(new Runnable() {
+						@Override
+						public void run() {
+							camera.pan(dx, dy);
+						}
+					});
 				}
-				repaint();
+			}
+		});
+
+		simulationPanel.addMouseWheelListener(new MouseWheelListener() {
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				final int x = e.getX(), y = e.getY();
+				final float factor = (float) Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation());
+				postInput(new Runnable() {
+					@Override
+					public void run() {
+						camera.zoomAt(x, y, factor);
+					}
+				});
 			}
 		});
 
@@ -90,8 +216,11 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 			protected void paintComponent(Graphics g) {
 				super.paintComponent(g);
 
-				sidebarDragging = isDragging;
-				sidebarDragType = dragItemType;
+				if (sidebarDragging != isDragging || sidebarDragType != dragItemType) {
+					sidebarDragging = isDragging;
+					sidebarDragType = dragItemType;
+					requestRender();
+				}
 			}
 
 			@Override
@@ -130,12 +259,12 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 							int simX = e.getX() + sidebarLoc.x - simLoc.x;
 							int simY = e.getY() + sidebarLoc.y - simLoc.y;
 
-							dropItemAt(dragItemType, simX, simY);
+							dropItemAt(dragItemType, toWorldX(simX), toWorldY(simY));
 
 							isDragging = false;
 							dragItemType = NONE;
 							repaint();
-							WaterSystemPanel.this.repaint();
+							requestRender();
 						}
 					}
 				});
@@ -160,14 +289,14 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 									&& screenPoint.y < getHeight()) {
 								if ((e.getModifiersEx() & MouseEvent.BUTTON1_DOWN_MASK) == 0) {
 
-									dropItemAt(dragItemType, screenPoint.x, screenPoint.y);
+									dropItemAt(dragItemType, toWorldX(screenPoint.x), toWorldY(screenPoint.y));
 									isDragging = false;
 									dragItemType = NONE;
 								}
 							}
 
 							repaint();
-							WaterSystemPanel.this.repaint();
+							requestRender();
 						}
 					}
 				});
@@ -203,15 +332,24 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 		add(sidebarPanel, BorderLayout.EAST);
 
 		simulationWidth = size.width - 200;
+		worldWidth = worldSize.width;
+		worldHeight = worldSize.height;
 
-		waterSimulation = new WaterSimulation(simulationWidth, size.height, 7);
-		malice = new Malice(waterSimulation);
+		waterSimulation = new WaterSimulation(worldWidth, worldHeight, 7);
+		malice = createMalice(false);
+		maxFractalDepth = ((Malice) malice).getMaxFractalDepth();
 
-		Creature.initializeEnvironment(new Dimension(simulationWidth, size.height), 50);
+		Creature.initializeEnvironment(new Dimension(worldWidth, worldHeight), 50);
+		camera = new Camera(worldWidth, worldHeight, simulationWidth, size.height);
 
 		plants = new ArrayList<>();
 		preys = new ArrayList<>();
+		preyView = Collections.unmodifiableList(preys);
+		preyNeighbors = new PreyNeighborList(preyView);
+		malice.setPreys(preyView);
 		plantsToRemove = new ArrayList<>();
+		livePlants = new ArrayList<>();
+		preyUpdater = new PreyUpdater();
 		userPlants = new ArrayList<>();
 		userPreys = new ArrayList<>();
 
@@ -220,12 +358,18 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 		addKeyListener(this);
 		setFocusable(true);
 
-		WaterAnimationTimer = new Timer(30, this);
+		qualityGovernor = new QualityGovernor(TICK_MILLIS * 1000000L);
+
+		WaterAnimationTimer = new Timer(TICK_MILLIS, this);
+	}
+
+	public void startSimulation() {
 		WaterAnimationTimer.start();
 	}
 
-	private boolean sidebarDragging;
-	private int sidebarDragType;
+	private int maxFractalDepth;
+	private volatile boolean sidebarDragging;
+	private volatile int sidebarDragType;
 
 	private void initializeEntities() {
 		for (int i = 0; i < DEFAULT_PLANT_COUNT; i++) {
@@ -236,35 +380,69 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 			createRandomPrey(false);
 		}
 
-		updatePreyReferences();
-
 		for (Prey prey : preys) {
 			prey.setMalice(malice);
 		}
 	}
 
-	private void renderSimulation(Graphics2D g2d) {
-		waterSimulation.render(g2d);
-
-		malice.render(g2d);
-
-		for (Plant plant : plants) {
-			if (plant.isAlive()) {
-				plant.draw(g2d);
+	public void runHeadless(int ticks, FrameCapture capture) {
+		synchronized (worldLock) {
+			int width = simulationWidth, height = getHeight();
+			camera.setViewportSize(width, height);
+			for (int i = 0; i < ticks; i++) {
+				stepSimulation();
+				capture.offer(compositor.compose(waterSimulation, malice, plants, preys, camera, width, height));
 			}
 		}
+		capture.close();
+	}
 
-		for (Prey prey : preys) {
-			if (prey.isAlive()) {
-				prey.draw(g2d);
-			}
+	private void toggleCapture() {
+		final FrameCapture capture = renderPipeline.getCapture();
+		if (capture != null) {
+			renderPipeline.setCapture(null);
+
+			// Draining the encoder queue can take a while, so it must not hold up the EDT or the world lock
+			Thread closer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					capture.close();
+					final String status = "Capture stopped: " + capture.getWrittenFrameCount() + " written, "
+							+ capture.getDroppedFrameCount() + " dropped";
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							sidebarPanel.setStatus(status);
+						}
+					});
+				}
+			}, "frame-capture-close");
+			closer.start();
+			return;
 		}
 
-		if (sidebarDragging) {
-			drawDragPreview(g2d, sidebarDragType, mousePosition);
+		File directory = new File("captures", "run-" + System.currentTimeMillis());
+		try {
+			renderPipeline.setCapture(new FrameCapture(directory, FrameCapture.PNG_SEQUENCE, 1, CAPTURE_QUEUE_CAPACITY,
+					FrameCapture.DROP, CAPTURE_ENCODER_THREADS));
+			sidebarPanel.setStatus("Capturing to " + directory.getPath());
+		} catch (IOException e) {
+			sidebarPanel.setStatus("Cannot start capture: " + e.getMessage());
 		}
 	}
 
+	private void requestRender() {
+		renderPipeline.invalidate();
+	}
+
+	private int toWorldX(int screenX) {
+		return (int) camera.toWorldX(screenX);
+	}
+
+	private int toWorldY(int screenY) {
+		return (int) camera.toWorldY(screenY);
+	}
+
 	private void drawDragPreview(Graphics2D g2d, int itemType, Point pos) {
 		if (pos.x >= simulationWidth)
 			return;
@@ -285,31 +463,42 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 		}
 	}
 
-	private void dropItemAt(int itemType, int x, int y) {
-		if (x >= 0 && x < simulationWidth && y >= 0 && y < getHeight()) {
-			switch (itemType) {
-			case SidebarPanel.PLANT:
-				createPlantAt(x, y);
-				break;
-			case SidebarPanel.PREY:
-				createPreyAt(x, y);
-				break;
-			case SidebarPanel.MALICE:
-				malice.createNodeAtPosition(x, y);
-				break;
-			}
+	private void dropItemAt(final int itemType, final int x, final int y) {
+		if (x >= 0 && x < worldWidth && y >= 0 && y < worldHeight) {
+			postInput(new Runnable() {
+				@Override
+				public void run() {
+					switch (itemType) {
+					case SidebarPanel.PLANT:
+						createPlantAt(x, y);
+						break;
+					case SidebarPanel.PREY:
+						createPreyAt(x, y);
+						break;
+					case SidebarPanel.MALICE:
+						malice.createNodeAt(x, y);
+						break;
+					}
+				}
+			});
 		}
 	}
 
-	private void updatePreyReferences() {
-		for (Prey prey : preys) {
-			prey.setOtherPrey(preys);
+	// Input is applied at the start of the next tick, so EDT handlers never wait on a frame holding the world lock
+	private void postInput(Runnable input) {
+		pendingInput.add(input);
+	}
+
+	private void applyPendingInput() {
+		Runnable input;
+		while ((input = pendingInput.poll()) != null) {
+			input.run();
 		}
 	}
 
 	private void createRandomPlant(boolean isUserCreated) {
-		int x = random.nextInt(simulationWidth - 100) + 50;
-		int y = random.nextInt(getHeight() - 100) + 50;
+		int x = random.nextInt(worldWidth - 100) + 50;
+		int y = random.nextInt(worldHeight - 100) + 50;
 		PVector pos = new PVector(x, y);
 		int size = random.nextInt(10) + 20;
 
@@ -322,7 +511,7 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 	}
 
 	private Plant createPlantAt(int x, int y) {
-		if (x >= simulationWidth)
+		if (x >= worldWidth)
 			return null;
 
 		PVector pos = new PVector(x, y);
@@ -335,8 +524,8 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 	}
 
 	private void createRandomPrey(boolean isUserCreated) {
-		int x = random.nextInt(simulationWidth - 100) + 50;
-		int y = random.nextInt(getHeight() - 100) + 50;
+		int x = random.nextInt(worldWidth - 100) + 50;
+		int y = random.nextInt(worldHeight - 100) + 50;
 		PVector pos = new PVector(x, y);
 		int size = random.nextInt(15) + 25;
 
@@ -345,17 +534,16 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 
 		prey.setMalice(malice);
 
+		prey.setOtherPrey(preyView);
 		preys.add(prey);
 
 		if (isUserCreated) {
 			userPreys.add(prey);
 		}
-
-		updatePreyReferences();
 	}
 
 	private Prey createPreyAt(int x, int y) {
-		if (x >= simulationWidth)
+		if (x >= worldWidth)
 			return null;
 
 		PVector pos = new PVector(x, y);
@@ -365,11 +553,10 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 		prey.setSpeed(2.0f + random.nextFloat());
 		prey.setMalice(malice);
 
+		prey.setOtherPrey(preyView);
 		preys.add(prey);
 		userPreys.add(prey);
 
-		updatePreyReferences();
-
 		return prey;
 	}
 
@@ -381,6 +568,30 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 
 	@Override
 	public void actionPerformed(ActionEvent e) {
+		synchronized (worldLock) {
+			applyPendingInput();
+			long start = System.nanoTime();
+			stepSimulation();
+			int quality = qualityGovernor.update(System.nanoTime() - start, lastComposeNanos);
+			if (quality != appliedQuality) {
+				applyQuality(quality);
+			}
+		}
+		requestRender();
+	}
+
+	private void applyQuality(int quality) {
+		appliedQuality = quality;
+		if (malice instanceof Malice) {
+			((Malice) malice).setMaxFractalDepth(
+					quality >= QualityGovernor.REDUCED_FRACTALS ? REDUCED_FRACTAL_DEPTH : maxFractalDepth);
+		}
+		Creature.reducedDetail = quality >= QualityGovernor.NO_OVERLAYS;
+		compositor.setWaterResolution(quality >= QualityGovernor.COARSE_WATER ? COARSE_WATER_RESOLUTION : 1);
+	}
+
+	private void stepSimulation() {
+		SimItem.setSeedSource(deterministic ? random : null);
 
 		waterSimulation.update();
 
@@ -412,46 +623,22 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 
 		ArrayList<Prey> preysToRemove = new ArrayList<>();
 
-		ArrayList<Plant> plantsEaten = new ArrayList<>();
-
-		for (Prey prey : preys) {
-			if (prey.isAlive()) {
-				prey.update();
-
-				for (Plant plant : plants) {
-					if (plant.isAlive() && !plantsEaten.contains(plant)) {
-
-						Area preyArea = prey.getOutline();
-						Area plantArea = plant.getOutline();
-
-						Area intersection = new Area(preyArea);
-						intersection.intersect(plantArea);
-
-						if (!intersection.isEmpty()) {
-							prey.eatPlant(plant);
-							plantsEaten.add(plant);
-							break;
-						}
-					}
-				}
-
-				malice.checkPreyCollisions(prey);
+		preyNeighbors.update();
 
-				ArrayList<Plant> livePlants = new ArrayList<>();
-				for (Plant plant : plants) {
-					if (plant.isAlive() && !plantsEaten.contains(plant)) {
-						livePlants.add(plant);
-					}
-				}
-				prey.huntForPlant(livePlants);
-			} else {
-				preysToRemove.add(prey);
+		livePlants.clear();
+		for (Plant plant : plants) {
+			if (plant.isAlive()) {
+				livePlants.add(plant);
 			}
 		}
 
-		for (Plant plant : plantsEaten) {
-			plant.setAlive(false);
-			plantsToRemove.add(plant);
+		preyUpdater.update(preys, livePlants, preysToRemove);
+
+		plantsToRemove.clear();
+		for (Plant plant : plants) {
+			if (!plant.isAlive()) {
+				plantsToRemove.add(plant);
+			}
 		}
 
 		for (Plant plant : plantsToRemove) {
@@ -481,9 +668,12 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 
 		maintainEntityCounts();
 
-		updatePreyReferences();
-
-		repaint();
+		for (Plant plant : plants) {
+			waterSimulation.markOccupied(plant.getPosition().x, plant.getPosition().y);
+		}
+		for (Prey prey : preys) {
+			waterSimulation.markOccupied(prey.getPosition().x, prey.getPosition().y);
+		}
 	}
 
 	private void maintainEntityCounts() {
@@ -541,25 +731,228 @@ public class WaterSystemPanel extends JPanel implements ActionListener, KeyListe
 			if (Math.abs(nodePos.x - x) < 15 && Math.abs(nodePos.y - y) < 15) {
 				int gridX = (int) (nodePos.x / waterSimulation.getCellSize());
 				int gridY = (int) (nodePos.y / waterSimulation.getCellSize());
-				Malice.Node node = malice.getNodeAt(gridX, gridY);
-				if (node != null) {
-					malice.removeNode(node);
+				if (malice.removeNodeAt(gridX, gridY)) {
 					return;
 				}
 			}
 		}
 	}
 
+	private void switchMaliceBackend() {
+		MaliceColony previous = malice;
+		malice = createMalice(previous instanceof Malice);
+		previous.dispose();
+		malice.setPreys(preyView);
+
+		for (Prey prey : preys) {
+			prey.setMalice(malice);
+		}
+		applyQuality(appliedQuality);
+	}
+
+	private MaliceColony createMalice(boolean bitset) {
+		MaliceColony colony = bitset ? new BitsetMalice(waterSimulation, random.nextLong())
+				: new Malice(waterSimulation, random.nextLong());
+		if (deterministic) {
+			colony.setFixedDeltaTime(TICK_MILLIS);
+		}
+		return colony;
+	}
+
+	public void saveSnapshot(File file) throws IOException {
+		SnapshotBuffer out = new SnapshotBuffer(SNAPSHOT_CAPACITY);
+		synchronized (worldLock) {
+			out.putInt(SNAPSHOT_MAGIC);
+			out.putInt(SNAPSHOT_VERSION);
+			out.putInt(worldWidth);
+			out.putInt(worldHeight);
+			out.putLong(random.getState());
+			out.putInt(sidebarPanel.getMaxPlants());
+			out.putInt(sidebarPanel.getMaxPrey());
+			out.putBoolean(preyNeighbors.isEnabled());
+			out.putFloat(preyNeighbors.getSkin());
+
+			waterSimulation.writeSnapshot(out);
+			out.putBoolean(malice instanceof BitsetMalice);
+			malice.writeSnapshot(out);
+
+			out.putInt(plants.size());
+			for (Plant plant : plants) {
+				out.putBoolean(userPlants.contains(plant));
+				plant.writeSnapshot(out);
+			}
+
+			out.putInt(preys.size());
+			for (Prey prey : preys) {
+				out.putBoolean(userPreys.contains(prey));
+				prey.writeSnapshot(out, plants, preys);
+			}
+		}
+		out.writeTo(file);
+	}
+
+	public void loadSnapshot(File file) throws IOException {
+		SnapshotBuffer in = SnapshotBuffer.read(file);
+		synchronized (worldLock) {
+			try {
+				readSnapshot(in);
+			} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException
+					| IllegalArgumentException e) {
+				throw new IOException("Corrupt snapshot: " + file, e);
+			} finally {
+				SimItem.setSeedSource(deterministic ? random : null);
+			}
+		}
+		requestRender();
+	}
+
+	// The file is decoded into fresh objects, and the live world is only replaced once all of it has been read
+	private void readSnapshot(SnapshotBuffer in) throws IOException {
+		if (in.getInt() != SNAPSHOT_MAGIC)
+			throw new IOException("Not an ecosystem snapshot");
+		int version = in.getInt();
+		if (version != SNAPSHOT_VERSION)
+			throw new IOException("Unsupported snapshot version " + version);
+		int width = in.getInt(), height = in.getInt();
+		if (width != worldWidth || height != worldHeight)
+			throw new IOException("Snapshot world is " + width + "x" + height + ", expected " + worldWidth + "x"
+					+ worldHeight);
+
+		long randomState = in.getLong();
+		int maxPlants = in.getInt();
+		int maxPrey = in.getInt();
+		boolean neighborsEnabled = in.getBoolean();
+		float neighborSkin = in.getFloat();
+
+		WaterSimulation water = new WaterSimulation(worldWidth, worldHeight, waterSimulation.getCellSize());
+		water.readSnapshot(in);
+
+		// Restored objects take their generator state from the file, so building them must not draw from ours
+		SimItem.setSeedSource(null);
+		MaliceColony colony = in.getBoolean() ? new BitsetMalice(water, 0) : new Malice(water, 0);
+		ArrayList<Plant> restoredPlants = new ArrayList<>();
+		ArrayList<Plant> restoredUserPlants = new ArrayList<>();
+		ArrayList<Prey> restoredPreys = new ArrayList<>();
+		ArrayList<Prey> restoredUserPreys = new ArrayList<>();
+		boolean complete = false;
+		try {
+			colony.readSnapshot(in);
+
+			// Entities reference each other by list index, so every object has to exist before any is read
+			int plantCount = in.getCount(1);
+			for (int i = 0; i < plantCount; i++) {
+				restoredPlants.add(new Plant(new PVector(), 0, water));
+			}
+			for (Plant plant : restoredPlants) {
+				if (in.getBoolean()) {
+					restoredUserPlants.add(plant);
+				}
+				plant.readSnapshot(in);
+			}
+
+			int preyCount = in.getCount(1);
+			for (int i = 0; i < preyCount; i++) {
+				Prey prey = new Prey(new PVector(), 0, water);
+				prey.setMalice(colony);
+				prey.setOtherPrey(preyView);
+				restoredPreys.add(prey);
+			}
+			for (Prey prey : restoredPreys) {
+				if (in.getBoolean()) {
+					restoredUserPreys.add(prey);
+				}
+				prey.readSnapshot(in, restoredPlants, restoredPreys);
+			}
+			complete = true;
+		} finally {
+			if (!complete) {
+				colony.dispose();
+			}
+		}
+
+		sidebarPanel.setMaxPlants(maxPlants);
+		sidebarPanel.setMaxPrey(maxPrey);
+		// These reset the neighbour lists of the outgoing prey, so they go before the restored prey are swapped in
+		preyNeighbors.setEnabled(neighborsEnabled);
+		preyNeighbors.setSkin(neighborSkin);
+
+		waterSimulation = water;
+		malice.dispose();
+		malice = colony;
+		malice.setPreys(preyView);
+		plants.clear();
+		plants.addAll(restoredPlants);
+		userPlants.clear();
+		userPlants.addAll(restoredUserPlants);
+		preys.clear();
+		preys.addAll(restoredPreys);
+		userPreys.clear();
+		userPreys.addAll(restoredUserPreys);
+
+		random.setState(randomState);
+		applyQuality(appliedQuality);
+	}
+
+	private void saveSnapshot() {
+		try {
+			saveSnapshot(SNAPSHOT_FILE);
+			sidebarPanel.setStatus("Snapshot saved to " + SNAPSHOT_FILE.getPath());
+		} catch (IOException e) {
+			sidebarPanel.setStatus("Cannot save snapshot: " + e.getMessage());
+		}
+	}
+
+	private void loadSnapshot() {
+		try {
+			loadSnapshot(SNAPSHOT_FILE);
+			sidebarPanel.setStatus("Snapshot loaded from " + SNAPSHOT_FILE.getPath());
+		} catch (IOException e) {
+			sidebarPanel.setStatus("Cannot load snapshot: " + e.getMessage());
+		}
+	}
+
 	@Override
 	public void keyTyped(KeyEvent e) {
 	}
 
 	@Override
 	public void keyPressed(KeyEvent e) {
-		if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-			Creature.displayInfo = !Creature.displayInfo;
-			repaint();
+		if (e.getKeyCode() == KeyEvent.VK_F5) {
+			saveSnapshot();
+			return;
+		} else if (e.getKeyCode() == KeyEvent.VK_F9) {
+			loadSnapshot();
+			return;
 		}
+
+		final int keyCode = e.getKeyCode();
+		postInput(new Runnable() {
+			@Override
+			public void run() {
+				if (keyCode == KeyEvent.VK_SPACE) {
+					Creature.displayInfo = !Creature.displayInfo;
+				} else if (keyCode == KeyEvent.VK_N) {
+					preyNeighbors.setEnabled(!preyNeighbors.isEnabled());
+				} else if (keyCode == KeyEvent.VK_M) {
+					switchMaliceBackend();
+				} else if (keyCode == KeyEvent.VK_LEFT) {
+					camera.pan(CAMERA_PAN_STEP, 0);
+				} else if (keyCode == KeyEvent.VK_RIGHT) {
+					camera.pan(-CAMERA_PAN_STEP, 0);
+				} else if (keyCode == KeyEvent.VK_UP) {
+					camera.pan(0, CAMERA_PAN_STEP);
+				} else if (keyCode == KeyEvent.VK_DOWN) {
+					camera.pan(0, -CAMERA_PAN_STEP);
+				} else if (keyCode == KeyEvent.VK_0) {
+					camera.reset();
+				} else if (keyCode == KeyEvent.VK_R) {
+					toggleCapture();
+				} else if (keyCode == KeyEvent.VK_Q) {
+					qualityGovernor.setEnabled(!qualityGovernor.isEnabled());
+					applyQuality(qualityGovernor.getLevel());
+				}
+			}
+		});
 	}
 
 	@Override
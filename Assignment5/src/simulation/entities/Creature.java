@@ -1,16 +1,18 @@
 package simulation.entities;
 
 import processing.core.PVector;
+import simulation.core.SnapshotBuffer;
 import simulation.core.WaterSimulation;
 
 import java.awt.*;
-import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
 
 public abstract class Creature extends SimItem {
 	protected float angle, speed, baseSpeed;
 	protected boolean hasFeelers = true;
 	protected float feelerLength = 100, feelerAngle = (float) Math.PI / 4;
+	protected float forwardEndX, forwardEndY, leftEndX, leftEndY, rightEndX, rightEndY;
+	private float feelerPosX = Float.NaN, feelerPosY, feelerVelX, feelerVelY;
 	protected static Dimension environmentSize;
 	protected static int margin;
 
@@ -26,6 +28,15 @@ public abstract class Creature extends SimItem {
 	protected boolean isInfected = false;
 
 	public static boolean displayInfo = true;
+	public static boolean reducedDetail = false;
+
+	private static final Color INFO_BACKGROUND = new Color(255, 255, 255, 60);
+	private static final Color INFO_TYPE_COLOR = Color.blue.darker();
+	private final InfoLabel typeLabel = new InfoLabel();
+	private final InfoLabel sizeLabel = new InfoLabel();
+	private final InfoLabel speedLabel = new InfoLabel();
+	private final InfoLabel energyLabel = new InfoLabel();
+	private final InfoLabel healthLabel = new InfoLabel();
 
 	public static void initializeEnvironment(Dimension envSize, int m) {
 		environmentSize = envSize;
@@ -112,46 +123,71 @@ public abstract class Creature extends SimItem {
 	protected void drawFeelers(Graphics2D g) {
 		if (!hasFeelers)
 			return;
-		PVector forward = velocity.copy().normalize().mult(feelerLength);
-		PVector forwardEnd = PVector.add(position, forward);
-		PVector left = velocity.copy().normalize().rotate(-feelerAngle).mult(feelerLength);
-		PVector leftEnd = PVector.add(position, left);
-		PVector right = velocity.copy().normalize().rotate(feelerAngle).mult(feelerLength);
-		PVector rightEnd = PVector.add(position, right);
-		g.drawLine((int) position.x, (int) position.y, (int) forwardEnd.x, (int) forwardEnd.y);
-		g.drawLine((int) position.x, (int) position.y, (int) leftEnd.x, (int) leftEnd.y);
-		g.drawLine((int) position.x, (int) position.y, (int) rightEnd.x, (int) rightEnd.y);
+		updateFeelers();
+		g.drawLine((int) position.x, (int) position.y, (int) forwardEndX, (int) forwardEndY);
+		g.drawLine((int) position.x, (int) position.y, (int) leftEndX, (int) leftEndY);
+		g.drawLine((int) position.x, (int) position.y, (int) rightEndX, (int) rightEndY);
+	}
+
+	protected void updateFeelers() {
+		if (position.x == feelerPosX && position.y == feelerPosY && velocity.x == feelerVelX
+				&& velocity.y == feelerVelY)
+			return;
+		feelerPosX = position.x;
+		feelerPosY = position.y;
+		feelerVelX = velocity.x;
+		feelerVelY = velocity.y;
+
+		float dirX = velocity.x, dirY = velocity.y;
+		float mag = (float) Math.sqrt(dirX * dirX + dirY * dirY);
+		if (mag != 0 && mag != 1) {
+			dirX /= mag;
+			dirY /= mag;
+		}
+
+		forwardEndX = position.x + dirX * feelerLength;
+		forwardEndY = position.y + dirY * feelerLength;
+
+		float cosLeft = (float) Math.cos(-feelerAngle), sinLeft = (float) Math.sin(-feelerAngle);
+		leftEndX = position.x + (dirX * cosLeft - dirY * sinLeft) * feelerLength;
+		leftEndY = position.y + (dirX * sinLeft + dirY * cosLeft) * feelerLength;
+
+		float cosRight = (float) Math.cos(feelerAngle), sinRight = (float) Math.sin(feelerAngle);
+		rightEndX = position.x + (dirX * cosRight - dirY * sinRight) * feelerLength;
+		rightEndY = position.y + (dirX * sinRight + dirY * cosRight) * feelerLength;
 	}
 
 	protected boolean detectWithFeelers(SimItem other) {
+		return detectWithFeelers(other.position.x, other.position.y, other.size / 2);
+	}
+
+	protected boolean detectWithFeelers(float x, float y, float threshold) {
 		if (!hasFeelers)
 			return false;
-		PVector otherPos = other.getPosition();
-		PVector forward = velocity.copy().normalize().mult(feelerLength);
-		PVector forwardEnd = PVector.add(position, forward);
-		PVector left = velocity.copy().normalize().rotate(-feelerAngle).mult(feelerLength);
-		PVector leftEnd = PVector.add(position, left);
-		PVector right = velocity.copy().normalize().rotate(feelerAngle).mult(feelerLength);
-		PVector rightEnd = PVector.add(position, right);
-		float forwardDist = pointToLineDistance(position, forwardEnd, otherPos);
-		float leftDist = pointToLineDistance(position, leftEnd, otherPos);
-		float rightDist = pointToLineDistance(position, rightEnd, otherPos);
-		float threshold = other.getSize() / 2;
-		return forwardDist < threshold || leftDist < threshold || rightDist < threshold;
-	}
-
-	private float pointToLineDistance(PVector lineStart, PVector lineEnd, PVector point) {
-		PVector line = PVector.sub(lineEnd, lineStart);
-		PVector pv = PVector.sub(point, lineStart);
-		float projLength = pv.dot(line) / line.mag();
+		updateFeelers();
+		float thresholdSq = threshold * threshold;
+		return segmentDistanceSq(position.x, position.y, forwardEndX, forwardEndY, x, y) < thresholdSq
+				|| segmentDistanceSq(position.x, position.y, leftEndX, leftEndY, x, y) < thresholdSq
+				|| segmentDistanceSq(position.x, position.y, rightEndX, rightEndY, x, y) < thresholdSq;
+	}
+
+	private static float segmentDistanceSq(float startX, float startY, float endX, float endY, float x, float y) {
+		float lineX = endX - startX, lineY = endY - startY;
+		float pvX = x - startX, pvY = y - startY;
+		float lineLength = (float) Math.sqrt(lineX * lineX + lineY * lineY);
+		float projLength = (pvX * lineX + pvY * lineY) / lineLength;
 		if (projLength < 0) {
-			return PVector.dist(lineStart, point);
-		} else if (projLength > line.mag()) {
-			return PVector.dist(lineEnd, point);
+			return pvX * pvX + pvY * pvY;
+		} else if (projLength > lineLength) {
+			float dx = endX - x, dy = endY - y;
+			return dx * dx + dy * dy;
+		}
+		if (lineLength != 0 && lineLength != 1) {
+			lineX /= lineLength;
+			lineY /= lineLength;
 		}
-		PVector projVector = line.copy().normalize().mult(projLength);
-		PVector perpendicular = PVector.sub(pv, projVector);
-		return perpendicular.mag();
+		float perpX = pvX - lineX * projLength, perpY = pvY - lineY * projLength;
+		return perpX * perpX + perpY * perpY;
 	}
 
 	public float getEnergy() {
@@ -170,49 +206,97 @@ public abstract class Creature extends SimItem {
 		this.speed = speed;
 	}
 
-	public void drawInfo(Graphics2D g) {
-		AffineTransform at = g.getTransform();
-		g.translate(position.x, position.y);
+	@Override
+	public void writeSnapshot(SnapshotBuffer out) {
+		super.writeSnapshot(out);
+		out.putFloat(angle);
+		out.putFloat(speed);
+		out.putFloat(baseSpeed);
+		out.putBoolean(hasFeelers);
+		out.putFloat(feelerLength);
+		out.putFloat(feelerAngle);
+		out.putFloat(forwardEndX);
+		out.putFloat(forwardEndY);
+		out.putFloat(leftEndX);
+		out.putFloat(leftEndY);
+		out.putFloat(rightEndX);
+		out.putFloat(rightEndY);
+		out.putFloat(feelerPosX);
+		out.putFloat(feelerPosY);
+		out.putFloat(feelerVelX);
+		out.putFloat(feelerVelY);
+		out.putFloat(energy);
+		out.putInt(state);
+		out.putInt(sickTimer);
+		out.putInt(deathThreshold);
+		out.putBoolean(isInfected);
+	}
 
-		String st1 = "Size     : " + String.format("%.2f", (float) size);
-		String st2 = "Speed  : " + String.format("%.2f", velocity.mag());
-		String st3 = "Energy : " + String.format("%.2f", energy);
-		String st4 = isInfected ? "Infected" : "Healthy";
+	@Override
+	public void readSnapshot(SnapshotBuffer in) {
+		super.readSnapshot(in);
+		angle = in.getFloat();
+		speed = in.getFloat();
+		baseSpeed = in.getFloat();
+		hasFeelers = in.getBoolean();
+		feelerLength = in.getFloat();
+		feelerAngle = in.getFloat();
+		forwardEndX = in.getFloat();
+		forwardEndY = in.getFloat();
+		leftEndX = in.getFloat();
+		leftEndY = in.getFloat();
+		rightEndX = in.getFloat();
+		rightEndY = in.getFloat();
+		feelerPosX = in.getFloat();
+		feelerPosY = in.getFloat();
+		feelerVelX = in.getFloat();
+		feelerVelY = in.getFloat();
+		energy = in.getFloat();
+		state = in.getInt();
+		sickTimer = in.getInt();
+		deathThreshold = in.getInt();
+		isInfected = in.getBoolean();
+	}
 
-		Font f = new Font("Courier", Font.PLAIN, 12);
-		g.setFont(f);
-		FontMetrics metrics = g.getFontMetrics(f);
+	public static boolean isInfoVisible() {
+		return displayInfo && !reducedDetail;
+	}
 
-		float textWidth = Math.max(Math.max(metrics.stringWidth(st1), metrics.stringWidth(st2)),
-				Math.max(metrics.stringWidth(st3), metrics.stringWidth(st4)));
-		float textHeight = metrics.getHeight();
+	public void drawInfo(Graphics2D g) {
+		typeLabel.setText(animalType());
+		sizeLabel.setNumber("Size     : ", size, 2);
+		speedLabel.setNumber("Speed  : ", velocity.mag(), 2);
+		energyLabel.setNumber("Energy : ", energy, 2);
+		healthLabel.setText(isInfected ? "Infected" : "Healthy");
+
+		int x = (int) position.x, y = (int) position.y;
+		float textWidth = Math.max(Math.max(sizeLabel.getWidth(), speedLabel.getWidth()),
+				Math.max(energyLabel.getWidth(), healthLabel.getWidth()));
+		float textHeight = InfoLabel.LINE_HEIGHT;
 		float margin = 12, spacing = 6;
 
-		float offsetY = -(size + margin + textHeight * 4 + spacing * 3);
+		float offsetY = y - (size + margin + textHeight * 4 + spacing * 3);
 
-		g.setColor(new Color(255, 255, 255, 60));
-		g.fillRect((int) (-textWidth / 2 - margin), (int) (offsetY), (int) (textWidth + margin * 2),
+		g.setColor(INFO_BACKGROUND);
+		g.fillRect((int) (x - textWidth / 2 - margin), (int) (offsetY), (int) (textWidth + margin * 2),
 				(int) (textHeight * 7 + spacing * 3 + margin * 2));
 
-		String typeStr = animalType();
-		g.setColor(Color.blue.darker());
-		g.drawString(typeStr, -metrics.stringWidth(typeStr) / 2, (int) (offsetY + margin + textHeight));
+		g.setColor(INFO_TYPE_COLOR);
+		typeLabel.drawCentered(g, x, (int) (offsetY + margin + textHeight));
 
 		g.setColor(Color.black);
-		g.drawString(st1, -metrics.stringWidth(st1) / 2, (int) (offsetY + margin + textHeight * 2 + spacing));
-		g.drawString(st2, -metrics.stringWidth(st2) / 2, (int) (offsetY + margin + textHeight * 3 + spacing * 2));
+		sizeLabel.drawCentered(g, x, (int) (offsetY + margin + textHeight * 2 + spacing));
+		speedLabel.drawCentered(g, x, (int) (offsetY + margin + textHeight * 3 + spacing * 2));
 
 		if (state == STATE_SICK)
 			g.setColor(Color.red);
-		g.drawString(st3, -metrics.stringWidth(st3) / 2, (int) (offsetY + margin + textHeight * 4 + spacing * 3));
+		energyLabel.drawCentered(g, x, (int) (offsetY + margin + textHeight * 4 + spacing * 3));
 
 		if (isInfected)
 			g.setColor(Color.red);
 		else
 			g.setColor(Color.green);
-		g.drawString(st4, -metrics.stringWidth(st4) / 2, (int) (offsetY + margin + textHeight * 5 + spacing * 4));
-
-		g.setTransform(at);
+		healthLabel.drawCentered(g, x, (int) (offsetY + margin + textHeight * 5 + spacing * 4));
 	}
 
 	public void infectCreature() {
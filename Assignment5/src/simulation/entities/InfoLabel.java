@@ -0,0 +1,89 @@
+package simulation.entities;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+
+class InfoLabel {
+	static final Font FONT = new Font("Courier", Font.PLAIN, 12);
+	static final FontRenderContext RENDER_CONTEXT = new FontRenderContext(null, false, false);
+	static final float LINE_HEIGHT = FONT.getLineMetrics("Ag", RENDER_CONTEXT).getHeight();
+
+	private static final int[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000 };
+
+	private String shownPrefix;
+	private long shownFirst = Long.MIN_VALUE;
+	private long shownSecond = Long.MIN_VALUE;
+	private String shownText;
+	private GlyphVector glyphs;
+	private int width;
+
+	void setText(String text) {
+		if (text.equals(shownText))
+			return;
+
+		shownPrefix = null;
+		shownFirst = Long.MIN_VALUE;
+		layout(text);
+	}
+
+	void setNumber(String prefix, float value, int decimals) {
+		long quantized = Math.round((double) value * POWERS_OF_TEN[decimals]);
+		if (prefix == shownPrefix && quantized == shownFirst && shownSecond == Long.MIN_VALUE)
+			return;
+
+		shownPrefix = prefix;
+		shownFirst = quantized;
+		shownSecond = Long.MIN_VALUE;
+		StringBuilder text = new StringBuilder(prefix);
+		appendFixed(text, quantized, decimals);
+		layout(text.toString());
+	}
+
+	void setPair(String prefix, float first, float second, int decimals) {
+		long quantizedFirst = Math.round((double) first * POWERS_OF_TEN[decimals]);
+		long quantizedSecond = Math.round((double) second * POWERS_OF_TEN[decimals]);
+		if (prefix == shownPrefix && quantizedFirst == shownFirst && quantizedSecond == shownSecond)
+			return;
+
+		shownPrefix = prefix;
+		shownFirst = quantizedFirst;
+		shownSecond = quantizedSecond;
+		StringBuilder text = new StringBuilder(prefix).append('(');
+		appendFixed(text, quantizedFirst, decimals);
+		text.append(',');
+		appendFixed(text, quantizedSecond, decimals);
+		layout(text.append(')').toString());
+	}
+
+	int getWidth() {
+		return width;
+	}
+
+	void drawCentered(Graphics2D g, int centerX, int baselineY) {
+		g.drawGlyphVector(glyphs, centerX - width / 2, baselineY);
+	}
+
+	private void layout(String text) {
+		shownText = text;
+		glyphs = FONT.createGlyphVector(RENDER_CONTEXT, text);
+		width = (int) Math.ceil(glyphs.getLogicalBounds().getWidth());
+	}
+
+	private static void appendFixed(StringBuilder text, long quantized, int decimals) {
+		if (quantized < 0) {
+			text.append('-');
+			quantized = -quantized;
+		}
+		text.append(quantized / POWERS_OF_TEN[decimals]);
+		if (decimals > 0) {
+			String fraction = Long.toString(quantized % POWERS_OF_TEN[decimals]);
+			text.append('.');
+			for (int i = fraction.length(); i < decimals; i++) {
+				text.append('0');
+			}
+			text.append(fraction);
+		}
+	}
+}
\ No newline at end of file
@@ -1,23 +1,26 @@
 package simulation.entities;
 
 import processing.core.PVector;
+import simulation.core.SnapshotBuffer;
 import simulation.core.WaterSimulation;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
 import java.awt.geom.Ellipse2D;
-import java.util.Random;
+import java.awt.image.BufferedImage;
 
 public class Plant extends SimItem {
 	private final float DESTROY_MALICE_RADIUS = 30.0f;
 	private final float MAX_SPEED = 1.0f;
-	private final Random random = new Random();
 	private float angle;
 	private float wobbleAngle = 0;
 	private float waveTimer = 0;
 
 	private static final float WAVE_INTERVAL = 15.0f;
+	private static final Color INFO_COLOR = new Color(0, 100, 0);
+	private final InfoLabel typeLabel = new InfoLabel();
+	private final InfoLabel velocityLabel = new InfoLabel();
 
 	private PVector acceleration;
 	private float nextDirectionChange;
@@ -125,26 +128,46 @@ public class Plant extends SimItem {
 		}
 	}
 
+	@Override
+	public void writeSnapshot(SnapshotBuffer out) {
+		super.writeSnapshot(out);
+		out.putFloat(angle);
+		out.putFloat(wobbleAngle);
+		out.putFloat(waveTimer);
+		out.putFloat(acceleration.x);
+		out.putFloat(acceleration.y);
+		out.putFloat(nextDirectionChange);
+		out.putFloat(forceMagnitude);
+	}
+
+	@Override
+	public void readSnapshot(SnapshotBuffer in) {
+		super.readSnapshot(in);
+		angle = in.getFloat();
+		wobbleAngle = in.getFloat();
+		waveTimer = in.getFloat();
+		acceleration = new PVector(in.getFloat(), in.getFloat());
+		nextDirectionChange = in.getFloat();
+		forceMagnitude = in.getFloat();
+	}
+
 	@Override
 	public void draw(Graphics2D g) {
 		if (!isAlive)
 			return;
 
-		AffineTransform at = g.getTransform();
-		g.translate(position.x, position.y);
-		g.rotate(angle);
-
-		g.setColor(new Color(0, 100, 0));
-		g.fillRect(-2, -size / 2, 4, size);
-
-		g.setColor(color);
-		g.fillOval(-size / 3, -size / 2, size / 2, size / 4);
-		g.fillOval(-size / 4, -size / 3, size / 2, size / 4);
-		g.fillOval(-size / 3, -size / 4, size / 2, size / 4);
-
-		g.setTransform(at);
+		long key = SpriteAtlas.key(SpriteAtlas.PLANT, size, color.getRGB(), 0);
+		BufferedImage sprite = sprites.get(key);
+		if (sprite == null) {
+			sprite = sprites.create(key, size / 2 + 3);
+			Graphics2D sg = sprite.createGraphics();
+			sg.translate(size / 2 + 3, size / 2 + 3);
+			drawBody(sg);
+			sg.dispose();
+		}
+		sprites.draw(g, sprite, position.x, position.y, angle);
 
-		if (Creature.displayInfo) {
+		if (Creature.isInfoVisible()) {
 
 			Area plantArea = getOutline();
 			g.setColor(new Color(0, 255, 0, 30));
@@ -158,22 +181,23 @@ public class Plant extends SimItem {
 		}
 	}
 
-	public void drawInfo(Graphics2D g) {
-		AffineTransform at = g.getTransform();
-		g.translate(position.x, position.y);
-
-		String st1 = "simulation.entities.Plant";
-		String st2 = String.format("v:(%.1f,%.1f)", velocity.x, velocity.y);
+	private void drawBody(Graphics2D g) {
+		g.setColor(new Color(0, 100, 0));
+		g.fillRect(-2, -size / 2, 4, size);
 
-		Font f = new Font("Courier", Font.PLAIN, 12);
-		g.setFont(f);
-		FontMetrics metrics = g.getFontMetrics(f);
+		g.setColor(color);
+		g.fillOval(-size / 3, -size / 2, size / 2, size / 4);
+		g.fillOval(-size / 4, -size / 3, size / 2, size / 4);
+		g.fillOval(-size / 3, -size / 4, size / 2, size / 4);
+	}
 
-		g.setColor(new Color(0, 100, 0));
-		g.drawString(st1, -metrics.stringWidth(st1) / 2, size + 20);
-		g.drawString(st2, -metrics.stringWidth(st2) / 2, size + 35);
+	public void drawInfo(Graphics2D g) {
+		typeLabel.setText("simulation.entities.Plant");
+		velocityLabel.setPair("v:", velocity.x, velocity.y, 1);
 
-		g.setTransform(at);
+		g.setColor(INFO_COLOR);
+		typeLabel.drawCentered(g, (int) position.x, (int) position.y + size + 20);
+		velocityLabel.drawCentered(g, (int) position.x, (int) position.y + size + 35);
 	}
 
 	@Override
@@ -207,7 +231,16 @@ public class Plant extends SimItem {
 	}
 
 	public boolean canDestroyMalice(PVector nodePosition) {
-		float distance = PVector.dist(position, nodePosition);
+		return canDestroyMalice(nodePosition.x, nodePosition.y);
+	}
+
+	public boolean canDestroyMalice(float x, float y) {
+		float dx = position.x - x, dy = position.y - y;
+		float distance = (float) Math.sqrt(dx * dx + dy * dy);
 		return distance < DESTROY_MALICE_RADIUS;
 	}
+
+	public float getDestroyMaliceRadius() {
+		return DESTROY_MALICE_RADIUS;
+	}
 }
\ No newline at end of file
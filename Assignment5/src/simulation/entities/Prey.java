@@ -1,21 +1,24 @@
 package simulation.entities;
 
 import processing.core.PVector;
+import simulation.core.SnapshotBuffer;
+import simulation.core.SnapshotRandom;
 import simulation.core.WaterSimulation;
-import simulation.env.Malice;
+import simulation.env.MaliceColony;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
 import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.List;
 
 public class Prey extends Creature {
 	private final float PLANT_DETECTION_RADIUS = 150.0f;
 	private final float MALICE_DETECTION_RADIUS = 3.0f;
 	private final float PREY_AVOIDANCE_FORCE = 1.5f;
-	private final Random random = new Random();
 
 	private static final int STATE_WANDERING = 0;
 	private static final int STATE_HUNTING = 1;
@@ -25,8 +28,11 @@ public class Prey extends Creature {
 	private int infectionTimer = 0;
 	private ArrayList<BlackDot> blackDots = new ArrayList<>();
 	private static final int MAX_DOTS = 20;
+	private static final int DOT_PATTERNS = 8;
+	private int dotPattern = 0;
+	private SnapshotRandom dotRandom = new SnapshotRandom(0);
 
-	private Malice malice;
+	private MaliceColony malice;
 	private int nodeCreationTimer = 0;
 	private static final int NODE_CREATION_INTERVAL = 10;
 
@@ -36,13 +42,13 @@ public class Prey extends Creature {
 		float angle;
 
 		public BlackDot() {
-			float r = random.nextFloat() * 0.9f;
-			float theta = random.nextFloat() * (float) (Math.PI * 2);
+			float r = dotRandom.nextFloat() * 0.9f;
+			float theta = dotRandom.nextFloat() * (float) (Math.PI * 2);
 
 			this.relativeX = r * (float) Math.cos(theta);
 			this.relativeY = r * (float) Math.sin(theta);
 
-			this.size = 2 + random.nextFloat() * 4;
+			this.size = 2 + dotRandom.nextFloat() * 4;
 
 			this.angle = 0;
 		}
@@ -58,7 +64,23 @@ public class Prey extends Creature {
 	private int waveTimer = 0;
 	private static final int WAVE_INTERVAL = 10;
 
-	private ArrayList<Prey> otherPrey;
+	private List<Prey> otherPrey;
+
+	ArrayList<Prey> neighbors;
+	float neighborBuildX, neighborBuildY;
+	int neighborBuildSize;
+
+	private float sensedX, sensedY;
+	private int sensedSize;
+	private boolean sensedAlive;
+
+	private int[] pendingWaves = new int[3 * 4];
+	private int pendingWaveCount = 0;
+	private boolean pendingNode = false;
+	private float pendingNodeX, pendingNodeY;
+	private Plant overlapMeal;
+	private Plant huntMeal;
+	private boolean touchedMalice = false;
 
 	public Prey(PVector startPos, int size, WaterSimulation waterSim) {
 		super(startPos, size, 1.0f, waterSim);
@@ -73,17 +95,180 @@ public class Prey extends Creature {
 		this.otherPrey = new ArrayList<>();
 	}
 
-	public void setOtherPrey(ArrayList<Prey> otherPrey) {
+	public void setOtherPrey(List<Prey> otherPrey) {
 
-		this.otherPrey = new ArrayList<>(otherPrey);
-
-		this.otherPrey.remove(this);
+		this.otherPrey = otherPrey;
 	}
 
-	public void setMalice(Malice malice) {
+	public void setMalice(MaliceColony malice) {
 		this.malice = malice;
 	}
 
+	public void writeSnapshot(SnapshotBuffer out, List<Plant> plants, List<Prey> preys) {
+		writeSnapshot(out);
+		out.putInt(infectionTimer);
+		out.putInt(blackDots.size());
+		for (BlackDot dot : blackDots) {
+			out.putFloat(dot.relativeX);
+			out.putFloat(dot.relativeY);
+			out.putFloat(dot.size);
+			out.putFloat(dot.angle);
+		}
+		out.putInt(dotPattern);
+		out.putLong(dotRandom.getState());
+		out.putInt(nodeCreationTimer);
+		out.putInt(behaviorState);
+		out.putFloat(wanderAngle);
+		out.putFloat(targetAngle);
+		out.putFloat(rotationSpeed);
+		out.putInt(waveTimer);
+		out.putFloat(sensedX);
+		out.putFloat(sensedY);
+		out.putInt(sensedSize);
+		out.putBoolean(sensedAlive);
+
+		// A target plant that already left the list still blocks re-targeting until it is noticed
+		int target = plants.indexOf(targetPlant);
+		out.putInt(targetPlant == null ? -1 : target >= 0 ? target : -2);
+
+		out.putFloat(neighborBuildX);
+		out.putFloat(neighborBuildY);
+		out.putInt(neighborBuildSize);
+		out.putInt(neighbors == null ? -1 : neighbors.size());
+		if (neighbors != null) {
+			for (Prey neighbor : neighbors) {
+				int index = preys.indexOf(neighbor);
+				out.putInt(index);
+				if (index < 0) {
+					out.putFloat(neighbor.sensedX);
+					out.putFloat(neighbor.sensedY);
+					out.putInt(neighbor.sensedSize);
+					out.putBoolean(neighbor.sensedAlive);
+				}
+			}
+		}
+	}
+
+	public void readSnapshot(SnapshotBuffer in, List<Plant> plants, List<Prey> preys) {
+		readSnapshot(in);
+		infectionTimer = in.getInt();
+		blackDots.clear();
+		int dotCount = in.getCount(16);
+		for (int i = 0; i < dotCount; i++) {
+			BlackDot dot = new BlackDot();
+			dot.relativeX = in.getFloat();
+			dot.relativeY = in.getFloat();
+			dot.size = in.getFloat();
+			dot.angle = in.getFloat();
+			blackDots.add(dot);
+		}
+		dotPattern = in.getInt();
+		dotRandom.setState(in.getLong());
+		nodeCreationTimer = in.getInt();
+		behaviorState = in.getInt();
+		wanderAngle = in.getFloat();
+		targetAngle = in.getFloat();
+		rotationSpeed = in.getFloat();
+		waveTimer = in.getInt();
+		sensedX = in.getFloat();
+		sensedY = in.getFloat();
+		sensedSize = in.getInt();
+		sensedAlive = in.getBoolean();
+
+		int target = in.getInt();
+		if (target >= 0) {
+			targetPlant = plants.get(target);
+		} else if (target == -2) {
+			targetPlant = new Plant(new PVector(), 0, null);
+			targetPlant.setAlive(false);
+		} else {
+			targetPlant = null;
+		}
+
+		neighborBuildX = in.getFloat();
+		neighborBuildY = in.getFloat();
+		neighborBuildSize = in.getInt();
+		int neighborCount = in.getInt();
+		neighbors = neighborCount < 0 ? null : new ArrayList<>();
+		for (int i = 0; i < neighborCount; i++) {
+			int index = in.getInt();
+			if (index >= 0) {
+				neighbors.add(preys.get(index));
+			} else {
+				Prey departed = new Prey(new PVector(), 0, null);
+				departed.sensedX = in.getFloat();
+				departed.sensedY = in.getFloat();
+				departed.sensedSize = in.getInt();
+				departed.sensedAlive = in.getBoolean();
+				neighbors.add(departed);
+			}
+		}
+	}
+
+	public void publishState() {
+		sensedX = position.x;
+		sensedY = position.y;
+		sensedSize = size;
+		sensedAlive = isAlive;
+	}
+
+	public void sense(List<Plant> plants) {
+		pendingWaveCount = 0;
+		pendingNode = false;
+		overlapMeal = null;
+		huntMeal = null;
+
+		update();
+
+		for (Plant plant : plants) {
+			if (plant.isAlive() && checkPlantOverlap(plant)) {
+				overlapMeal = plant;
+				break;
+			}
+		}
+
+		touchedMalice = malice != null && malice.isInContact(this);
+
+		huntForPlant(plants);
+	}
+
+	public void act() {
+		for (int i = 0; i < pendingWaveCount; i++) {
+			waterSim.createDisturbance(pendingWaves[i * 3], pendingWaves[i * 3 + 1], pendingWaves[i * 3 + 2]);
+		}
+		pendingWaveCount = 0;
+
+		if (pendingNode) {
+			malice.createNodeAt(pendingNodeX, pendingNodeY);
+			pendingNode = false;
+		}
+
+		if (overlapMeal != null) {
+			eatPlant(overlapMeal);
+			overlapMeal = null;
+		}
+
+		if (touchedMalice) {
+			infectCreature();
+			touchedMalice = false;
+		}
+
+		if (huntMeal != null) {
+			eatPlant(huntMeal);
+			huntMeal = null;
+		}
+	}
+
+	private void queueWave(int x, int y, int radius) {
+		if (pendingWaveCount * 3 == pendingWaves.length) {
+			pendingWaves = Arrays.copyOf(pendingWaves, pendingWaves.length * 2);
+		}
+		pendingWaves[pendingWaveCount * 3] = x;
+		pendingWaves[pendingWaveCount * 3 + 1] = y;
+		pendingWaves[pendingWaveCount * 3 + 2] = radius;
+		pendingWaveCount++;
+	}
+
 	@Override
 	public void update() {
 		if (!isAlive)
@@ -96,7 +281,9 @@ public class Prey extends Creature {
 				nodeCreationTimer++;
 				if (nodeCreationTimer >= NODE_CREATION_INTERVAL) {
 
-					malice.createNodeAtPosition(position.x, position.y);
+					pendingNode = true;
+					pendingNodeX = position.x;
+					pendingNodeY = position.y;
 					nodeCreationTimer = 0;
 				}
 			}
@@ -129,15 +316,17 @@ public class Prey extends Creature {
 		if (otherPrey == null || otherPrey.isEmpty())
 			return;
 
+		List<Prey> candidates = neighbors != null ? neighbors : otherPrey;
+
 		PVector avoidanceForce = new PVector(0, 0);
 		boolean collision = false;
 
-		for (Prey other : otherPrey) {
-			if (other == this || !other.isAlive())
+		for (Prey other : candidates) {
+			if (other == this || !other.sensedAlive)
 				continue;
 
-			if (detectWithFeelers(other)) {
-				PVector awayFromOther = PVector.sub(position, other.getPosition());
+			if (detectWithFeelers(other.sensedX, other.sensedY, other.sensedSize / 2)) {
+				PVector awayFromOther = new PVector(position.x - other.sensedX, position.y - other.sensedY);
 
 				float distance = awayFromOther.mag();
 				if (distance < 0.1f)
@@ -188,18 +377,15 @@ public class Prey extends Creature {
 
 	private void createStrongerWaves() {
 		if (waterSim != null) {
-
-			int x = (int) position.x;
-			int y = (int) position.y;
-
-			waterSim.setDisturbanceRadius(2);
-
-			waterSim.createDisturbance(x, y);
-
-			waterSim.setDisturbanceRadius(1);
+			queueWave((int) position.x, (int) position.y, 2);
 		}
 	}
 
+	@Override
+	protected void createWaves() {
+		queueWave((int) position.x, (int) position.y, waterSim.getDisturbanceRadius());
+	}
+
 	private void updateBehavior() {
 		if (isInfected && behaviorState != STATE_HUNTING && targetPlant == null) {
 			behaviorState = STATE_HUNTING;
@@ -240,7 +426,7 @@ public class Prey extends Creature {
 		}
 	}
 
-	public void huntForPlant(ArrayList<Plant> plants) {
+	public void huntForPlant(List<Plant> plants) {
 		if (plants == null || plants.isEmpty()) {
 			behaviorState = STATE_WANDERING;
 			return;
@@ -272,7 +458,7 @@ public class Prey extends Creature {
 			PVector direction = PVector.sub(targetPlant.getPosition(), position);
 
 			if (checkPlantOverlap(targetPlant)) {
-				eatPlant(targetPlant);
+				huntMeal = targetPlant;
 				targetPlant = null;
 				behaviorState = STATE_WANDERING;
 			} else {
@@ -314,14 +500,25 @@ public class Prey extends Creature {
 	}
 
 	public void checkMaliceContact(PVector nodePosition) {
-		if (!isInfected) {
-			float distance = PVector.dist(position, nodePosition);
-			if (distance < MALICE_DETECTION_RADIUS) {
-				infectCreature();
-			}
+		if (!isInfected && detectsMalice(nodePosition)) {
+			infectCreature();
 		}
 	}
 
+	public boolean detectsMalice(PVector nodePosition) {
+		return detectsMalice(nodePosition.x, nodePosition.y);
+	}
+
+	public boolean detectsMalice(float x, float y) {
+		float dx = position.x - x, dy = position.y - y;
+		float distance = (float) Math.sqrt(dx * dx + dy * dy);
+		return distance < MALICE_DETECTION_RADIUS;
+	}
+
+	public float getMaliceDetectionRadius() {
+		return MALICE_DETECTION_RADIUS;
+	}
+
 	@Override
 	public void infectCreature() {
 		if (!isInfected) {
@@ -331,6 +528,8 @@ public class Prey extends Creature {
 
 			infectionTimer = 0;
 			blackDots.clear();
+			dotPattern = random.nextInt(DOT_PATTERNS);
+			dotRandom = new SnapshotRandom(dotPattern);
 
 			blackDots.add(new BlackDot());
 		}
@@ -356,10 +555,34 @@ public class Prey extends Creature {
 		if (!isAlive)
 			return;
 
-		AffineTransform at = g.getTransform();
-		g.translate(position.x, position.y);
-		g.rotate(angle + (float) Math.PI / 2);
+		int variant = isInfected ? (1 << 12) | (dotPattern << 6) | blackDots.size() : 0;
+		long key = SpriteAtlas.key(SpriteAtlas.PREY, size, color.getRGB(), variant);
+		BufferedImage sprite = sprites.get(key);
+		if (sprite == null) {
+			sprite = sprites.create(key, size * 2 / 3 + 2);
+			Graphics2D sg = sprite.createGraphics();
+			sg.translate(size * 2 / 3 + 2, size * 2 / 3 + 2);
+			drawBody(sg);
+			sg.dispose();
+		}
+		sprites.draw(g, sprite, position.x, position.y, angle + (float) Math.PI / 2);
+
+		if (isInfoVisible()) {
+
+			if (isInfected) {
+				g.setColor(new Color(200, 0, 0, 100));
+			} else {
+				g.setColor(new Color(200, 200, 200, 100));
+			}
+			drawFeelers(g);
+		}
+
+		if (isInfoVisible()) {
+			drawInfo(g);
+		}
+	}
 
+	private void drawBody(Graphics2D g) {
 		if (isInfected) {
 			g.setColor(new Color(200, 0, 0));
 		} else {
@@ -384,22 +607,6 @@ public class Prey extends Creature {
 				g.fillOval((int) (dotX - dot.size / 2), (int) (dotY - dot.size / 2), (int) dot.size, (int) dot.size);
 			}
 		}
-
-		g.setTransform(at);
-
-		if (displayInfo) {
-
-			if (isInfected) {
-				g.setColor(new Color(200, 0, 0, 100));
-			} else {
-				g.setColor(new Color(200, 200, 200, 100));
-			}
-			drawFeelers(g);
-		}
-
-		if (displayInfo) {
-			drawInfo(g);
-		}
 	}
 
 	@Override
@@ -0,0 +1,111 @@
+package simulation.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PreyNeighborList {
+	private static final float DEFAULT_SKIN = 30.0f;
+
+	private final List<Prey> preys;
+	private float skin = DEFAULT_SKIN;
+	private boolean enabled = false;
+	private int rebuildCount = 0;
+
+	public PreyNeighborList(List<Prey> preys) {
+		this.preys = preys;
+	}
+
+	public void update() {
+		if (!enabled)
+			return;
+
+		if (needsRebuild()) {
+			rebuild();
+		}
+	}
+
+	private boolean needsRebuild() {
+		float limit = skin / 2;
+		float limitSq = limit * limit;
+		for (Prey prey : preys) {
+			// Reach depends on size, and prey grow as they feed
+			if (prey.neighbors == null || prey.size != prey.neighborBuildSize)
+				return true;
+			float dx = prey.position.x - prey.neighborBuildX;
+			float dy = prey.position.y - prey.neighborBuildY;
+			if (!(dx * dx + dy * dy <= limitSq))
+				return true;
+		}
+		return false;
+	}
+
+	private void rebuild() {
+		for (Prey prey : preys) {
+			if (prey.neighbors == null) {
+				prey.neighbors = new ArrayList<>();
+			} else {
+				prey.neighbors.clear();
+			}
+			prey.neighborBuildX = prey.position.x;
+			prey.neighborBuildY = prey.position.y;
+			prey.neighborBuildSize = prey.size;
+		}
+
+		for (int i = 0; i < preys.size(); i++) {
+			Prey a = preys.get(i);
+			if (!a.isAlive())
+				continue;
+			for (int j = i + 1; j < preys.size(); j++) {
+				Prey b = preys.get(j);
+				if (!b.isAlive())
+					continue;
+
+				float dx = a.position.x - b.position.x;
+				float dy = a.position.y - b.position.y;
+				float distSq = dx * dx + dy * dy;
+
+				float reachA = a.feelerLength + b.size / 2 + skin;
+				if (distSq < reachA * reachA) {
+					a.neighbors.add(b);
+				}
+				float reachB = b.feelerLength + a.size / 2 + skin;
+				if (distSq < reachB * reachB) {
+					b.neighbors.add(a);
+				}
+			}
+		}
+		rebuildCount++;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		if (this.enabled == enabled)
+			return;
+		this.enabled = enabled;
+		if (!enabled) {
+			for (Prey prey : preys) {
+				prey.neighbors = null;
+			}
+		}
+	}
+
+	public float getSkin() {
+		return skin;
+	}
+
+	public void setSkin(float skin) {
+		if (skin >= 0) {
+			this.skin = skin;
+			for (Prey prey : preys) {
+				prey.neighbors = null;
+			}
+		}
+	}
+
+	public int getRebuildCount() {
+		return rebuildCount;
+	}
+}
@@ -1,10 +1,13 @@
 package simulation.entities;
 
 import processing.core.PVector;
+import simulation.core.SnapshotBuffer;
+import simulation.core.SnapshotRandom;
 import simulation.core.WaterSimulation;
 
 import java.awt.*;
 import java.awt.geom.Area;
+import java.util.Random;
 
 public class SimItem {
 	protected PVector position;
@@ -15,6 +18,11 @@ public class SimItem {
 	protected boolean isAlive;
 
 	protected WaterSimulation waterSim;
+	protected final SnapshotRandom random = seedSource != null ? new SnapshotRandom(seedSource.nextLong())
+			: new SnapshotRandom();
+
+	protected static final SpriteAtlas sprites = new SpriteAtlas();
+	private static Random seedSource;
 
 	public SimItem() {
 		this.position = new PVector(0, 0);
@@ -52,6 +60,42 @@ public class SimItem {
 
 	}
 
+	public static void setSeedSource(Random source) {
+		seedSource = source;
+	}
+
+	public void writeSnapshot(SnapshotBuffer out) {
+		out.putFloat(position.x);
+		out.putFloat(position.y);
+		out.putFloat(velocity.x);
+		out.putFloat(velocity.y);
+		out.putInt(size);
+		out.putFloat(scale);
+		out.putInt(color.getRGB());
+		out.putBoolean(isAlive);
+		out.putLong(random.getState());
+	}
+
+	public void readSnapshot(SnapshotBuffer in) {
+		position = new PVector(in.getFloat(), in.getFloat());
+		velocity = new PVector(in.getFloat(), in.getFloat());
+		size = in.getInt();
+		scale = in.getFloat();
+		color = new Color(in.getInt(), true);
+		isAlive = in.getBoolean();
+		random.setState(in.getLong());
+	}
+
+	public static SpriteAtlas getSpriteAtlas() {
+		return sprites;
+	}
+
+	public boolean isVisibleIn(Rectangle view, float margin) {
+		float extent = size + margin;
+		return position.x + extent >= view.x && position.x - extent <= view.x + view.width
+				&& position.y + extent >= view.y && position.y - extent <= view.y + view.height;
+	}
+
 	public Area getOutline() {
 
 		return null;
@@ -0,0 +1,106 @@
+package simulation.entities;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SpriteAtlas {
+	public static final int PREY = 0;
+	public static final int PLANT = 1;
+
+	private static final int DEFAULT_CAPACITY = 256;
+
+	private final LinkedHashMap<Long, BufferedImage> sprites;
+	private final AffineTransform transform = new AffineTransform();
+	private int capacity;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public SpriteAtlas() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public SpriteAtlas(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.sprites = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+				if (size() > SpriteAtlas.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public static long key(int kind, int size, int rgb, int variant) {
+		return ((long) kind << 60) | ((long) (size & 0xFFF) << 48) | ((long) (rgb & 0xFFFFFF) << 24) | (variant & 0xFFFFFF);
+	}
+
+	public BufferedImage get(long key) {
+		BufferedImage sprite = sprites.get(key);
+		if (sprite != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return sprite;
+	}
+
+	public BufferedImage create(long key, int halfExtent) {
+		BufferedImage sprite = new BufferedImage(halfExtent * 2, halfExtent * 2, BufferedImage.TYPE_INT_ARGB);
+		sprites.put(key, sprite);
+		return sprite;
+	}
+
+	public void draw(Graphics2D g, BufferedImage sprite, float x, float y, double angle) {
+		transform.setToTranslation(x, y);
+		transform.rotate(angle);
+		transform.translate(-sprite.getWidth() / 2, -sprite.getHeight() / 2);
+
+		Object interpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(sprite, transform, null);
+		if (interpolation != null) {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+		}
+	}
+
+	public void clear() {
+		sprites.clear();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void setCapacity(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		while (sprites.size() > this.capacity) {
+			Long eldest = sprites.keySet().iterator().next();
+			sprites.remove(eldest);
+			evictions++;
+		}
+	}
+
+	public int getSpriteCount() {
+		return sprites.size();
+	}
+
+	public long getHitCount() {
+		return hits;
+	}
+
+	public long getMissCount() {
+		return misses;
+	}
+
+	public long getEvictionCount() {
+		return evictions;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,456 @@
+package simulation.env;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Path2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import processing.core.PVector;
+import simulation.core.SnapshotBuffer;
+import simulation.core.SnapshotRandom;
+import simulation.core.WaterSimulation;
+import simulation.entities.Plant;
+import simulation.entities.Prey;
+
+public class BitsetMalice implements MaliceColony {
+	private WaterSimulation waterSim;
+	private int cols, rows, cellSize;
+	private int wordsPerRow;
+	private long lastWordMask;
+	private long[] cells;
+	private long[] frontier;
+	private byte[] generations;
+	private int nodeCount = 0;
+	private long renderVersion = 0;
+	private final RenderDamage structureDamage = new RenderDamage();
+	private final RenderDamage connectorDamage = new RenderDamage();
+	private int maxNodes = DEFAULT_MAX_NODES;
+	private float spreadProbability = 0.7f;
+	private long fixedDeltaTime = 0;
+	private long lastUpdateTime;
+	private SnapshotRandom random;
+	private List<Prey> preys;
+	private Color[] palette;
+	private Path2D.Float[] cellPaths;
+
+	private static final int DEFAULT_MAX_NODES = 20000;
+	private static final int MAX_GENERATION = 127;
+	private static final int COLOR_BUCKETS = 6;
+	private static final float WATER_THRESHOLD = 0.2f;
+	private static final float GRADIENT_SCALE = 0.5f;
+	private static final float GROWTH_RATE = 0.05f;
+
+	public BitsetMalice(WaterSimulation waterSim) {
+		this(waterSim, new Random().nextLong());
+	}
+
+	public BitsetMalice(WaterSimulation waterSim, long seed) {
+		this.waterSim = waterSim;
+		this.cols = waterSim.getCols();
+		this.rows = waterSim.getRows();
+		this.cellSize = waterSim.getCellSize();
+		this.wordsPerRow = (cols + 63) >> 6;
+		this.lastWordMask = (cols & 63) == 0 ? -1L : (1L << (cols & 63)) - 1;
+		this.cells = new long[wordsPerRow * rows];
+		this.frontier = new long[wordsPerRow * rows];
+		this.generations = new byte[cols * rows];
+		this.random = new SnapshotRandom(seed);
+		this.lastUpdateTime = System.currentTimeMillis();
+
+		this.palette = new Color[COLOR_BUCKETS];
+		this.cellPaths = new Path2D.Float[COLOR_BUCKETS];
+		for (int generation = 0; generation < COLOR_BUCKETS; generation++) {
+			int value = Math.max(0, Math.min(180 + generation * 15, 255));
+			palette[generation] = new Color(value, 0, value);
+			cellPaths[generation] = new Path2D.Float();
+		}
+
+		int startX = cols / 2;
+		int startY = Math.min(cols / 2, rows - 1);
+		setCell(startX, startY, 0);
+	}
+
+	public void setSpreadProbability(float probability) {
+		if (probability >= 0.0f && probability <= 1.0f) {
+			this.spreadProbability = probability;
+		}
+	}
+
+	public void setNodeBudget(int maxNodes) {
+		this.maxNodes = Math.max(0, maxNodes);
+	}
+
+	@Override
+	public void setFixedDeltaTime(long millis) {
+		this.fixedDeltaTime = Math.max(0, millis);
+	}
+
+	@Override
+	public void dispose() {
+	}
+
+	@Override
+	public void writeSnapshot(SnapshotBuffer out) {
+		out.putInt(cols);
+		out.putInt(rows);
+		out.putLong(random.getState());
+		out.putInt(nodeCount);
+		out.putInt(maxNodes);
+		out.putFloat(spreadProbability);
+		out.putLong(fixedDeltaTime);
+		out.putLongs(cells, 0, cells.length);
+		out.putBytes(generations, 0, generations.length);
+	}
+
+	@Override
+	public void readSnapshot(SnapshotBuffer in) throws IOException {
+		if (in.getInt() != cols || in.getInt() != rows)
+			throw new IOException("Snapshot Malice grid does not match this world");
+
+		random.setState(in.getLong());
+		nodeCount = in.getInt();
+		maxNodes = in.getInt();
+		spreadProbability = in.getFloat();
+		fixedDeltaTime = in.getLong();
+		in.getLongs(cells, 0, cells.length);
+		in.getBytes(generations, 0, generations.length);
+		lastUpdateTime = System.currentTimeMillis();
+		structureDamage.markAll();
+		renderVersion++;
+	}
+
+	@Override
+	public void setPreys(List<Prey> preys) {
+		this.preys = preys;
+	}
+
+	@Override
+	public long getRenderVersion() {
+		return renderVersion;
+	}
+
+	@Override
+	public RenderDamage getStructureDamage() {
+		return structureDamage;
+	}
+
+	@Override
+	public RenderDamage getConnectorDamage() {
+		return connectorDamage;
+	}
+
+	@Override
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	private boolean isInBounds(int x, int y) {
+		return x >= 0 && x < cols && y >= 0 && y < rows;
+	}
+
+	private boolean isOccupied(int x, int y) {
+		if (!isInBounds(x, y))
+			return false;
+		return (cells[y * wordsPerRow + (x >> 6)] & (1L << x)) != 0;
+	}
+
+	private void setCell(int x, int y, int generation) {
+		int word = y * wordsPerRow + (x >> 6);
+		if ((cells[word] & (1L << x)) != 0)
+			return;
+		cells[word] |= 1L << x;
+		generations[x + y * cols] = (byte) Math.min(generation, MAX_GENERATION);
+		nodeCount++;
+		structureDamage.add(x * cellSize, y * cellSize, cellSize, cellSize);
+		renderVersion++;
+	}
+
+	private boolean clearCell(int x, int y) {
+		int word = y * wordsPerRow + (x >> 6);
+		if ((cells[word] & (1L << x)) == 0)
+			return false;
+		cells[word] &= ~(1L << x);
+		nodeCount--;
+		structureDamage.add(x * cellSize, y * cellSize, cellSize, cellSize);
+		renderVersion++;
+		return true;
+	}
+
+	@Override
+	public void update() {
+		long currentTime = System.currentTimeMillis();
+		long deltaTime = Math.min(currentTime - lastUpdateTime, 100);
+		lastUpdateTime = currentTime;
+		if (fixedDeltaTime > 0) {
+			deltaTime = fixedDeltaTime;
+		}
+
+		float growChance = GROWTH_RATE * spreadProbability * (float) Math.min(deltaTime / 20.0, 0.4);
+		if (growChance <= 0 || nodeCount == 0)
+			return;
+
+		computeFrontier();
+
+		for (int y = 0; y < rows; y++) {
+			int rowStart = y * wordsPerRow;
+			for (int w = 0; w < wordsPerRow; w++) {
+				long bits = frontier[rowStart + w];
+				while (bits != 0) {
+					if (maxNodes > 0 && nodeCount >= maxNodes)
+						return;
+
+					int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+
+					float currentHeight = waterSim.getWaterHeight(x, y);
+					if (Math.abs(currentHeight) <= WATER_THRESHOLD)
+						continue;
+
+					float gradient = steepestGradient(x, y, currentHeight);
+					if (random.nextFloat() < growChance * Math.min(gradient / GRADIENT_SCALE, 1.0f)) {
+						setCell(x, y, lowestNeighborGeneration(x, y) + 1);
+					}
+				}
+			}
+		}
+	}
+
+	private void computeFrontier() {
+		for (int y = 0; y < rows; y++) {
+			int rowStart = y * wordsPerRow;
+			for (int w = 0; w < wordsPerRow; w++) {
+				long grown = dilateRow(y, w);
+				if (y > 0) {
+					grown |= dilateRow(y - 1, w);
+				}
+				if (y < rows - 1) {
+					grown |= dilateRow(y + 1, w);
+				}
+				grown &= ~cells[rowStart + w];
+				if (w == wordsPerRow - 1) {
+					grown &= lastWordMask;
+				}
+				frontier[rowStart + w] = grown;
+			}
+		}
+	}
+
+	private long dilateRow(int y, int w) {
+		int rowStart = y * wordsPerRow;
+		long word = cells[rowStart + w];
+		long previous = w > 0 ? cells[rowStart + w - 1] : 0;
+		long next = w < wordsPerRow - 1 ? cells[rowStart + w + 1] : 0;
+		return word | (word << 1) | (previous >>> 63) | (word >>> 1) | (next << 63);
+	}
+
+	private float steepestGradient(int x, int y, float currentHeight) {
+		float highestDiff = 0;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				int nx = x + dx;
+				int ny = y + dy;
+				if ((dx != 0 || dy != 0) && isInBounds(nx, ny)) {
+					highestDiff = Math.max(highestDiff, Math.abs(waterSim.getWaterHeight(nx, ny) - currentHeight));
+				}
+			}
+		}
+		return highestDiff;
+	}
+
+	private int lowestNeighborGeneration(int x, int y) {
+		int lowest = -1;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				if (isOccupied(x + dx, y + dy)) {
+					int generation = generations[x + dx + (y + dy) * cols];
+					if (lowest < 0 || generation < lowest) {
+						lowest = generation;
+					}
+				}
+			}
+		}
+		return lowest;
+	}
+
+	@Override
+	public boolean createNodeAt(float x, float y) {
+		int gridX = (int) (x / cellSize);
+		int gridY = (int) (y / cellSize);
+		if (!isInBounds(gridX, gridY) || isOccupied(gridX, gridY))
+			return false;
+		if (maxNodes > 0 && nodeCount >= maxNodes)
+			return false;
+
+		int generation = lowestNeighborGeneration(gridX, gridY);
+		setCell(gridX, gridY, generation < 0 ? 0 : generation + 1);
+		return true;
+	}
+
+	@Override
+	public boolean removeNodeAt(int gridX, int gridY) {
+		return isInBounds(gridX, gridY) && clearCell(gridX, gridY);
+	}
+
+	@Override
+	public void render(Graphics2D g2d) {
+		render(g2d, new Rectangle(0, 0, cols * cellSize, rows * cellSize));
+	}
+
+	@Override
+	public void render(Graphics2D g2d, Rectangle view) {
+		renderStructure(g2d, view);
+	}
+
+	@Override
+	public void renderConnectors(Graphics2D g2d, Rectangle view) {
+	}
+
+	@Override
+	public void renderStructure(Graphics2D g2d, Rectangle view) {
+		for (Path2D.Float path : cellPaths) {
+			path.reset();
+		}
+
+		int minX = Math.max(0, Math.floorDiv(view.x, cellSize));
+		int maxX = Math.min(cols - 1, Math.floorDiv(view.x + view.width, cellSize));
+		int minY = Math.max(0, Math.floorDiv(view.y, cellSize));
+		int maxY = Math.min(rows - 1, Math.floorDiv(view.y + view.height, cellSize));
+		if (minX > maxX)
+			return;
+		int firstWord = minX >> 6, lastWord = maxX >> 6;
+		long firstMask = -1L << minX, lastMask = -1L >>> (63 - (maxX & 63));
+
+		for (int y = minY; y <= maxY; y++) {
+			int rowStart = y * wordsPerRow;
+			int runStart = 0, runEnd = 0, runBucket = -1;
+			for (int w = firstWord; w <= lastWord; w++) {
+				long bits = cells[rowStart + w];
+				if (w == firstWord) {
+					bits &= firstMask;
+				}
+				if (w == lastWord) {
+					bits &= lastMask;
+				}
+				while (bits != 0) {
+					int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+
+					int bucket = Math.min(generations[x + y * cols], cellPaths.length - 1);
+					if (bucket == runBucket && x == runEnd) {
+						runEnd++;
+						continue;
+					}
+					if (runBucket >= 0) {
+						appendRun(cellPaths[runBucket], runStart, runEnd, y);
+					}
+					runStart = x;
+					runEnd = x + 1;
+					runBucket = bucket;
+				}
+			}
+			if (runBucket >= 0) {
+				appendRun(cellPaths[runBucket], runStart, runEnd, y);
+			}
+		}
+
+		for (int bucket = 0; bucket < cellPaths.length; bucket++) {
+			g2d.setColor(palette[bucket]);
+			g2d.fill(cellPaths[bucket]);
+		}
+	}
+
+	private void appendRun(Path2D.Float path, int fromX, int toX, int y) {
+		path.moveTo(fromX * cellSize, y * cellSize);
+		path.lineTo(toX * cellSize, y * cellSize);
+		path.lineTo(toX * cellSize, (y + 1) * cellSize);
+		path.lineTo(fromX * cellSize, (y + 1) * cellSize);
+		path.closePath();
+	}
+
+	@Override
+	public ArrayList<PVector> getNodePositions() {
+		ArrayList<PVector> positions = new ArrayList<>(nodeCount);
+		for (int y = 0; y < rows; y++) {
+			int rowStart = y * wordsPerRow;
+			for (int w = 0; w < wordsPerRow; w++) {
+				long bits = cells[rowStart + w];
+				while (bits != 0) {
+					int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					positions.add(new PVector(x * cellSize + cellSize / 2, y * cellSize + cellSize / 2));
+				}
+			}
+		}
+		return positions;
+	}
+
+	@Override
+	public void checkPlantCollisions(Plant plant) {
+		PVector pos = plant.getPosition();
+		float radius = plant.getDestroyMaliceRadius();
+		int minX = Math.max(0, cellFloor(pos.x - radius)), maxX = Math.min(cols - 1, cellFloor(pos.x + radius));
+		int minY = Math.max(0, cellFloor(pos.y - radius)), maxY = Math.min(rows - 1, cellFloor(pos.y + radius));
+
+		for (int y = minY; y <= maxY; y++) {
+			if (!anyOccupied(y, minX, maxX))
+				continue;
+			for (int x = minX; x <= maxX; x++) {
+				if (isOccupied(x, y) && plant.canDestroyMalice(x * cellSize + cellSize / 2, y * cellSize + cellSize / 2)) {
+					clearCell(x, y);
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean isInContact(Prey prey) {
+		PVector pos = prey.getPosition();
+		float radius = prey.getMaliceDetectionRadius();
+		int minX = Math.max(0, cellFloor(pos.x - radius)), maxX = Math.min(cols - 1, cellFloor(pos.x + radius));
+		int minY = Math.max(0, cellFloor(pos.y - radius)), maxY = Math.min(rows - 1, cellFloor(pos.y + radius));
+
+		for (int y = minY; y <= maxY; y++) {
+			if (!anyOccupied(y, minX, maxX))
+				continue;
+			for (int x = minX; x <= maxX; x++) {
+				if (isOccupied(x, y) && prey.detectsMalice(x * cellSize + cellSize / 2, y * cellSize + cellSize / 2)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void checkPreyCollisions(Prey prey) {
+		if (!prey.isInfected() && isInContact(prey)) {
+			prey.infectCreature();
+		}
+	}
+
+	private boolean anyOccupied(int y, int fromX, int toX) {
+		if (fromX > toX)
+			return false;
+		int rowStart = y * wordsPerRow;
+		int firstWord = fromX >> 6, lastWord = toX >> 6;
+		for (int w = firstWord; w <= lastWord; w++) {
+			long mask = -1L;
+			if (w == firstWord) {
+				mask &= -1L << fromX;
+			}
+			if (w == lastWord) {
+				mask &= -1L >>> (63 - (toX & 63));
+			}
+			if ((cells[rowStart + w] & mask) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	private int cellFloor(float pixel) {
+		return (int) Math.floor((pixel - cellSize / 2) / cellSize);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,8 @@
+package simulation.env;
+
+public enum EvictionPolicy {
+	OLDEST_GENERATION, LEAST_RECENTLY_ACTIVE,
+	// Keys come from a prey grid query that is O(P) in the worst case (prey far away or clustered)
+	// and are refreshed every 30 ticks, so a node whose prey moved away may be evicted late
+	FARTHEST_FROM_PREY
+}
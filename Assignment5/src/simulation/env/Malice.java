@@ -1,119 +1,248 @@
 package simulation.env;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Color;
 import java.awt.BasicStroke;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
 import processing.core.PVector;
+import simulation.core.SnapshotBuffer;
+import simulation.core.SnapshotRandom;
 import simulation.core.WaterSimulation;
 import simulation.entities.Plant;
 import simulation.entities.Prey;
 
-public class Malice {
+public class Malice implements MaliceColony {
 	private ArrayList<Node> nodes;
-	private ArrayList<Connector> connectors;
-	private ArrayList<FractalBranch> fractalBranches;
-	private ArrayList<Connection> nodeConnections;
+	private int numConnectors;
+	private int[] connStart;
+	private int[] connEndX, connEndY;
+	private int[] connOriginX, connOriginY;
+	private float[] connLifespan, connMaxLifespan;
+	private boolean[] connActive;
+	private int numPending;
+	private int[] pendingStart, pendingEndX, pendingEndY;
+	private ArrayList<GrowthChunk> growthChunks;
+	private ForkJoinPool growthPool;
+	private long fixedDeltaTime = 0;
+	private boolean[] connMoved;
+	private long tick = 0;
+	private long nextSerial = 0;
+	private long renderVersion = 0;
+	private final RenderDamage structureDamage = new RenderDamage();
+	private final RenderDamage connectorDamage = new RenderDamage();
+
+	private int maxNodes = DEFAULT_MAX_NODES;
+	private int maxConnectors = DEFAULT_MAX_CONNECTORS;
+	private EvictionPolicy evictionPolicy = EvictionPolicy.OLDEST_GENERATION;
+	private PriorityQueue<EvictionEntry> nodeEvictionQueue;
+	private PriorityQueue<EvictionEntry> connectorEvictionQueue;
+	private long lastEvictionRefresh = 0;
+	private List<Prey> preys;
+	private boolean preyGridValid = false;
+	private int preyGridCols, preyGridRows, preyGridCount;
+	private int[] preyCellStart;
+	private float[] preyGridX, preyGridY;
+	private long evictedNodes = 0;
+	private long evictedConnectors = 0;
+	private LinkedHashSet<Connection> nodeConnections;
+	private ArrayList<Node> dirtyNodes;
+	private ArrayList<Node> farFallbackNodes;
+	private long[] occupied;
+	private int[] cellIndex;
 	private WaterSimulation waterSim;
-	private Random random;
+	private SnapshotRandom random;
 	private long lastUpdateTime;
 	private int cols, rows, cellSize;
 	private int maxFractalDepth = 4;
+	private Path2D.Float connectionPath;
+	private Path2D.Float[] branchPaths;
+	private BasicStroke[] branchStrokes;
+	private Color[] branchColors;
+	private Path2D.Float[] connectorPaths;
+	private Color[] connectorColors;
+	private Path2D.Float[] nodePaths;
+	private Color[] nodeColors;
+	private Ellipse2D.Float nodeShape;
+	private ArrayList<Node> visibleNodes = new ArrayList<>();
 
 	private final int MAX_DISTANCE_FROM_PARENT = 7;
+	private static final int BRANCH_WINDOW = 3;
+	private static final int BRANCH_STRIDE = 5;
+	private static final int GROWTH_CHUNK_SIZE = 2048;
+	private static final int DEFAULT_MAX_NODES = 20000;
+	private static final int DEFAULT_MAX_CONNECTORS = 100000;
+	private static final int PREY_DISTANCE_REFRESH_TICKS = 30;
+	private static final int PREY_GRID_CELL_SIZE = 64;
+	private static final int RENDER_MARGIN = 15;
+	private static final int DAMAGE_PADDING = 3;
+	private static final int CONNECTOR_BUCKETS = 5;
+	private static final int NODE_COLOR_BUCKETS = 6;
+	private static final BasicStroke CONNECTION_STROKE = new BasicStroke(0.5f);
+	private static final BasicStroke CONNECTOR_STROKE = new BasicStroke(1.0f);
+	private static final BasicStroke NODE_STROKE = new BasicStroke(1.0f);
+	private static final Color CONNECTION_COLOR = new Color(100, 0, 100, 100);
 	private float spreadProbability = 0.7f;
 
 	private class Connection {
 		Node node1;
 		Node node2;
+		int distanceSq;
 
 		public Connection(Node node1, Node node2) {
 			this.node1 = node1;
 			this.node2 = node2;
+			if (node2 != null) {
+				int dx = node1.x - node2.x, dy = node1.y - node2.y;
+				this.distanceSq = dx * dx + dy * dy;
+			} else {
+				this.distanceSq = Integer.MAX_VALUE;
+			}
 		}
 	}
 
 	public class Node {
 		int x, y;
 		int generation;
+		int connectorCount;
+		boolean removed;
+		boolean dirty;
+		Connection fallback;
+		ArrayList<Connection> incomingFallbacks = new ArrayList<>();
+		int[] branches;
+		int branchCount;
+		boolean branchesValid;
+		long serial;
+		long lastActiveTick;
+		int index;
+		int[] connectorSlots = new int[4];
 
 		public Node(int x, int y, int generation) {
 			this.x = x;
 			this.y = y;
 			this.generation = generation;
+			this.serial = nextSerial++;
+			this.lastActiveTick = tick;
 		}
 
 		public double distanceTo(Node other) {
-			return Math.sqrt(Math.pow(this.x - other.x, 2) + Math.pow(this.y - other.y, 2));
+			int dx = this.x - other.x, dy = this.y - other.y;
+			return Math.sqrt(dx * dx + dy * dy);
 		}
 
 		public double distanceTo(int x, int y) {
-			return Math.sqrt(Math.pow(this.x - x, 2) + Math.pow(this.y - y, 2));
+			int dx = this.x - x, dy = this.y - y;
+			return Math.sqrt(dx * dx + dy * dy);
 		}
 	}
 
-	private class Connector {
-		Node start;
-		int endX, endY;
-		float lifespan;
-		float maxLifespan;
-		boolean active;
-
-		int originalX, originalY;
-
-		public Connector(Node start, int endX, int endY) {
-			this.start = start;
-			this.endX = endX;
-			this.endY = endY;
-			this.originalX = endX;
-			this.originalY = endY;
-			this.active = true;
-			this.lifespan = 0;
+	private static class EvictionEntry implements Comparable<EvictionEntry> {
+		final Node node;
+		long key;
 
-			this.maxLifespan = 50000 + random.nextInt(5000);
+		EvictionEntry(Node node, long key) {
+			this.node = node;
+			this.key = key;
 		}
 
-		public boolean update(long deltaTime) {
-
-			long scaledDelta = Math.min(deltaTime, 100);
-			lifespan += scaledDelta;
+		@Override
+		public int compareTo(EvictionEntry other) {
+			if (key != other.key)
+				return Long.compare(key, other.key);
+			return Long.compare(node.serial, other.node.serial);
+		}
+	}
 
-			double distance = Math.sqrt(Math.pow(endX - originalX, 2) + Math.pow(endY - originalY, 2));
-			if (distance > MAX_DISTANCE_FROM_PARENT) {
-				return false;
+	private static class GrowthChunk {
+		int count;
+		int[] start = new int[16];
+		int[] x = new int[16];
+		int[] y = new int[16];
+		double[] angleOffset = new double[16];
+
+		void propose(int startIndex, int nodeX, int nodeY, double angle) {
+			if (count == start.length) {
+				start = Arrays.copyOf(start, count * 2);
+				x = Arrays.copyOf(x, count * 2);
+				y = Arrays.copyOf(y, count * 2);
+				angleOffset = Arrays.copyOf(angleOffset, count * 2);
 			}
-
-			return lifespan < maxLifespan && active;
+			start[count] = startIndex;
+			x[count] = nodeX;
+			y[count] = nodeY;
+			angleOffset[count] = angle;
+			count++;
 		}
 	}
 
-	private class FractalBranch {
-		int x1, y1, x2, y2;
-		int depth;
-		float angle;
+	private class GrowthTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int fromChunk, toChunk;
+		private final long seed, deltaTime;
+
+		GrowthTask(int fromChunk, int toChunk, long seed, long deltaTime) {
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+			this.seed = seed;
+			this.deltaTime = deltaTime;
+		}
 
-		public FractalBranch(int x1, int y1, int x2, int y2, int depth, float angle) {
-			this.x1 = x1;
-			this.y1 = y1;
-			this.x2 = x2;
-			this.y2 = y2;
-			this.depth = depth;
-			this.angle = angle;
+		@Override
+		protected void compute() {
+			if (toChunk - fromChunk == 1) {
+				growChunk(fromChunk, seed, deltaTime);
+				return;
+			}
+			int mid = (fromChunk + toChunk) >>> 1;
+			invokeAll(new GrowthTask(fromChunk, mid, seed, deltaTime), new GrowthTask(mid, toChunk, seed, deltaTime));
 		}
 	}
 
 	public Malice(WaterSimulation waterSim) {
+		this(waterSim, new Random().nextLong());
+	}
+
+	public Malice(WaterSimulation waterSim, long seed) {
 		this.waterSim = waterSim;
 		this.cols = waterSim.getCols();
 		this.rows = waterSim.getRows();
 		this.cellSize = waterSim.getCellSize();
 		this.nodes = new ArrayList<>();
-		this.connectors = new ArrayList<>();
-		this.fractalBranches = new ArrayList<>();
-		this.nodeConnections = new ArrayList<>();
-		this.random = new Random();
+		this.connStart = new int[64];
+		this.connEndX = new int[64];
+		this.connEndY = new int[64];
+		this.connOriginX = new int[64];
+		this.connOriginY = new int[64];
+		this.connLifespan = new float[64];
+		this.connMaxLifespan = new float[64];
+		this.connActive = new boolean[64];
+		this.connMoved = new boolean[64];
+		this.nodeEvictionQueue = new PriorityQueue<>();
+		this.connectorEvictionQueue = new PriorityQueue<>();
+		this.pendingStart = new int[64];
+		this.pendingEndX = new int[64];
+		this.pendingEndY = new int[64];
+		this.nodeConnections = new LinkedHashSet<>();
+		this.dirtyNodes = new ArrayList<>();
+		this.farFallbackNodes = new ArrayList<>();
+		this.occupied = new long[(cols * rows + 63) >> 6];
+		this.cellIndex = new int[cols * rows];
+		this.growthChunks = new ArrayList<>();
+		this.growthPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		this.random = new SnapshotRandom(seed);
 		this.lastUpdateTime = System.currentTimeMillis();
+		createRenderBuckets();
 
 		int startX = cols / 2;
 		int startY = cols / 2;
@@ -135,7 +264,7 @@ public class Malice {
 		y = (y / 5) * 5;
 
 		Node initialNode = new Node(x, y, 0);
-		nodes.add(initialNode);
+		int initialIndex = addNode(initialNode);
 
 		for (int i = 0; i < 8; i++) {
 			double angle = Math.PI * 2 * i / 8;
@@ -144,73 +273,162 @@ public class Malice {
 			int endY = y + (int) (Math.sin(angle) * distance);
 
 			if (isInBounds(endX, endY)) {
-				connectors.add(new Connector(initialNode, endX, endY));
+				addConnector(initialIndex, endX, endY);
 			}
 		}
 	}
 
+	@Override
+	public boolean createNodeAt(float x, float y) {
+		return createNodeAtPosition(x, y) != null;
+	}
+
 	public Node createNodeAtPosition(float x, float y) {
+		preyGridValid = false;
 		int gridX = (int) (x / cellSize);
 		int gridY = (int) (y / cellSize);
 
 		gridX = (gridX / 5) * 5;
 		gridY = (gridY / 5) * 5;
 
-		for (Node existingNode : nodes) {
-			double distance = Math.sqrt(Math.pow(existingNode.x - gridX, 2) + Math.pow(existingNode.y - gridY, 2));
-			if (distance < 3) {
-
-				return null;
-			}
+		if (hasNodeWithin(gridX, gridY, 2)) {
+			return null;
 		}
 
 		Node closestNode = findClosestNode(gridX, gridY);
 
 		Node newNode = new Node(gridX, gridY, closestNode != null ? closestNode.generation + 1 : 0);
 
-		nodes.add(newNode);
+		int newIndex = addNode(newNode);
 
 		if (closestNode != null) {
 
-			Connector connector = new Connector(closestNode, gridX, gridY);
-			connectors.add(connector);
-
-			nodeConnections.add(new Connection(closestNode, newNode));
+			addConnector(closestNode.index, gridX, gridY);
 		}
 
-		createConnectorsFromNode(newNode);
+		createConnectorsFromNode(newNode, newIndex);
+
+		enforceBudgets();
 
-		return newNode;
+		return newNode.removed ? null : newNode;
 	}
 
-	private Node findClosestNode(int x, int y) {
-		if (nodes.isEmpty()) {
-			return null;
+	private int addNode(Node node) {
+		node.index = nodes.size();
+		nodes.add(node);
+		damageCell(node.x, node.y);
+		if (isInBounds(node.x, node.y)) {
+			int cell = node.x + node.y * cols;
+			occupied[cell >> 6] |= 1L << cell;
+			cellIndex[cell] = nodes.size() - 1;
+		}
+		markDirty(node);
+		invalidateFallbacksNear(node);
+		invalidateFractalBranches(nodes.size() - 1 - BRANCH_WINDOW, nodes.size() - 1);
+		if (maxNodes > 0) {
+			nodeEvictionQueue.add(new EvictionEntry(node, evictionKey(node)));
 		}
+		return nodes.size() - 1;
+	}
 
-		Node closest = null;
-		double closestDistance = Double.MAX_VALUE;
+	private boolean isOccupied(int x, int y) {
+		if (!isInBounds(x, y))
+			return false;
+		int cell = x + y * cols;
+		return (occupied[cell >> 6] & (1L << cell)) != 0;
+	}
 
-		for (Node node : nodes) {
+	private boolean hasNodeWithin(int x, int y, int halfWidth) {
+		int minX = Math.max(0, x - halfWidth), maxX = Math.min(cols - 1, x + halfWidth);
+		if (minX > maxX)
+			return false;
+		for (int yy = Math.max(0, y - halfWidth); yy <= Math.min(rows - 1, y + halfWidth); yy++) {
+			if (anyOccupied(minX + yy * cols, maxX + yy * cols)) {
+				return true;
+			}
+		}
+		return false;
+	}
 
-			if (node.x == x && node.y == y)
-				continue;
+	private boolean anyOccupied(int fromCell, int toCell) {
+		int fromWord = fromCell >> 6, toWord = toCell >> 6;
+		long fromMask = -1L << fromCell;
+		long toMask = -1L >>> (63 - (toCell & 63));
+		if (fromWord == toWord) {
+			return (occupied[fromWord] & fromMask & toMask) != 0;
+		}
+		if ((occupied[fromWord] & fromMask) != 0 || (occupied[toWord] & toMask) != 0)
+			return true;
+		for (int w = fromWord + 1; w < toWord; w++) {
+			if (occupied[w] != 0)
+				return true;
+		}
+		return false;
+	}
 
-			double distance = Math.sqrt(Math.pow(node.x - x, 2) + Math.pow(node.y - y, 2));
-			if (distance < closestDistance) {
-				closestDistance = distance;
-				closest = node;
+	private Node findClosestNode(int x, int y) {
+		return findNearestNode(x, y, MAX_DISTANCE_FROM_PARENT);
+	}
+
+	private Node findNearestNode(int x, int y, int maxDistance) {
+		int maxRadius = Math.min(maxDistance, Math.max(Math.max(x, cols - 1 - x), Math.max(y, rows - 1 - y)));
+		int maxDistanceSq = maxDistance * maxDistance;
+
+		Node nearest = null;
+		int nearestDistanceSq = Integer.MAX_VALUE;
+		int nearestIndex = Integer.MAX_VALUE;
+
+		for (int r = 1; r <= maxRadius; r++) {
+			if (nearestDistanceSq < r * r)
+				break;
+			// Ring cost grows with the area covered, so once that passes the node count a plain scan is cheaper
+			if ((long) (2 * r + 1) * (2 * r + 1) > nodes.size())
+				return scanNearestNode(x, y, maxDistanceSq);
+
+			for (int dy = -r; dy <= r; dy++) {
+				int yy = y + dy;
+				if (yy < 0 || yy >= rows)
+					continue;
+				int step = (dy == -r || dy == r) ? 1 : 2 * r;
+				for (int dx = -r; dx <= r; dx += step) {
+					int xx = x + dx;
+					if (!isOccupied(xx, yy))
+						continue;
+
+					int distanceSq = dx * dx + dy * dy;
+					int index = cellIndex[xx + yy * cols];
+					if (distanceSq <= maxDistanceSq && (distanceSq < nearestDistanceSq
+							|| (distanceSq == nearestDistanceSq && index < nearestIndex))) {
+						nearest = nodes.get(index);
+						nearestDistanceSq = distanceSq;
+						nearestIndex = index;
+					}
+				}
 			}
 		}
 
-		if (closest != null && closestDistance > MAX_DISTANCE_FROM_PARENT) {
-			return null;
-		}
+		return nearest;
+	}
+
+	private Node scanNearestNode(int x, int y, int maxDistanceSq) {
+		Node nearest = null;
+		int nearestDistanceSq = Integer.MAX_VALUE;
+		for (int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			int dx = node.x - x, dy = node.y - y;
+			int distanceSq = dx * dx + dy * dy;
+			if (distanceSq == 0 || !isInBounds(node.x, node.y))
+				continue;
 
-		return closest;
+			if (distanceSq <= maxDistanceSq && distanceSq < nearestDistanceSq) {
+				nearest = node;
+				nearestDistanceSq = distanceSq;
+			}
+		}
+		return nearest;
 	}
 
-	private void createConnectorsFromNode(Node node) {
+	private void createConnectorsFromNode(Node node, int index) {
 		for (int i = 0; i < 3; i++) {
 			double angle = Math.PI * 2 * i / 3;
 			int distance = 2;
@@ -218,7 +436,7 @@ public class Malice {
 			int endY = node.y + (int) (Math.sin(angle) * distance);
 
 			if (isInBounds(endX, endY)) {
-				connectors.add(new Connector(node, endX, endY));
+				addConnector(index, endX, endY);
 			}
 		}
 	}
@@ -227,24 +445,94 @@ public class Malice {
 		return x >= 0 && x < cols && y >= 0 && y < rows;
 	}
 
+	@Override
 	public void update() {
 		long currentTime = System.currentTimeMillis();
 		long deltaTime = currentTime - lastUpdateTime;
 		lastUpdateTime = currentTime;
+		tick++;
+		preyGridValid = false;
 
 		deltaTime = Math.min(deltaTime, 100);
+		if (fixedDeltaTime > 0) {
+			deltaTime = fixedDeltaTime;
+		}
+
+		numPending = 0;
+
+		int numChunks = (numConnectors + GROWTH_CHUNK_SIZE - 1) / GROWTH_CHUNK_SIZE;
+		while (growthChunks.size() < numChunks) {
+			growthChunks.add(new GrowthChunk());
+		}
+		long seed = random.nextLong();
+		if (numChunks > 1 && growthPool.getParallelism() > 1) {
+			growthPool.invoke(new GrowthTask(0, numChunks, seed, deltaTime));
+		} else {
+			for (int chunk = 0; chunk < numChunks; chunk++) {
+				growChunk(chunk, seed, deltaTime);
+			}
+		}
 
-		ArrayList<Connector> toRemove = new ArrayList<>();
-		ArrayList<Connector> toAdd = new ArrayList<>();
+		for (int chunk = 0; chunk < numChunks; chunk++) {
+			GrowthChunk proposals = growthChunks.get(chunk);
+			for (int p = 0; p < proposals.count; p++) {
+				Node start = nodes.get(proposals.start[p]);
+				start.lastActiveTick = tick;
+				createNewNode(start, proposals.x[p], proposals.y[p], proposals.angleOffset[p]);
+			}
+			proposals.count = 0;
+		}
 
-		for (Connector c : connectors) {
-			if (!c.update(deltaTime)) {
-				toRemove.add(c);
+		int i = 0;
+		while (i < numConnectors) {
+			if (connMoved[i]) {
+				// A connector end moves at most one cell per tick, so its padded new segment covers the old one
+				Node start = nodes.get(connStart[i]);
+				connectorDamage.addSegment(cellCenter(start.x), cellCenter(start.y), cellCenter(connEndX[i]),
+						cellCenter(connEndY[i]), DAMAGE_PADDING + cellSize);
+				start.lastActiveTick = tick;
+				connMoved[i] = false;
+			}
+			if (!connActive[i]) {
+				removeConnectorAt(i);
 				continue;
 			}
+			i++;
+		}
+
+		for (int p = 0; p < numPending; p++) {
+			addConnector(pendingStart[p], pendingEndX[p], pendingEndY[p]);
+		}
+		numPending = 0;
+
+		enforceBudgets();
+
+		updateFractalBranches();
+
+		ensureAllNodesAreConnected();
+	}
+
+	private void growChunk(int chunk, long seed, long deltaTime) {
+		Random rng = new Random(seed + chunk * 0x9E3779B97F4A7C15L);
+		GrowthChunk proposals = growthChunks.get(chunk);
+		proposals.count = 0;
+
+		int from = chunk * GROWTH_CHUNK_SIZE;
+		int to = Math.min(from + GROWTH_CHUNK_SIZE, numConnectors);
+		for (int i = from; i < to; i++) {
+			connLifespan[i] += Math.min(deltaTime, 100);
+
+			int originDx = connEndX[i] - connOriginX[i], originDy = connEndY[i] - connOriginY[i];
+			if (originDx * originDx + originDy * originDy > MAX_DISTANCE_FROM_PARENT * MAX_DISTANCE_FROM_PARENT
+					|| !(connLifespan[i] < connMaxLifespan[i])) {
+				connActive[i] = false;
+			}
+			if (!connActive[i])
+				continue;
 
-			if (isInBounds(c.endX, c.endY)) {
-				float currentHeight = waterSim.getWaterHeight(c.endX, c.endY);
+			int endX = connEndX[i], endY = connEndY[i];
+			if (isInBounds(endX, endY)) {
+				float currentHeight = waterSim.getWaterHeight(endX, endY);
 
 				if (Math.abs(currentHeight) > 0.2f) {
 					int bestDx = 0, bestDy = 0;
@@ -255,8 +543,8 @@ public class Malice {
 							if (dx == 0 && dy == 0)
 								continue;
 
-							int nx = c.endX + dx;
-							int ny = c.endY + dy;
+							int nx = endX + dx;
+							int ny = endY + dy;
 
 							if (isInBounds(nx, ny)) {
 								float neighborHeight = waterSim.getWaterHeight(nx, ny);
@@ -271,151 +559,756 @@ public class Malice {
 						}
 					}
 
-					int proposedX = c.endX + bestDx;
-					int proposedY = c.endY + bestDy;
-					double distanceFromParent = c.start.distanceTo(proposedX, proposedY);
+					Node start = nodes.get(connStart[i]);
+					int proposedX = endX + bestDx;
+					int proposedY = endY + bestDy;
+					double distanceFromParent = start.distanceTo(proposedX, proposedY);
 
 					if (distanceFromParent <= MAX_DISTANCE_FROM_PARENT) {
-						c.endX = proposedX;
-						c.endY = proposedY;
+						endX = connEndX[i] = proposedX;
+						endY = connEndY[i] = proposedY;
+						connMoved[i] = true;
 					}
 
-					boolean onGridOrNearby = isOnGrid(c.endX, c.endY) || (c.endX % 5 <= 1 || c.endX % 5 >= 4)
-							|| (c.endY % 5 <= 1 || c.endY % 5 >= 4);
+					boolean onGridOrNearby = isOnGrid(endX, endY) || (endX % 5 <= 1 || endX % 5 >= 4)
+							|| (endY % 5 <= 1 || endY % 5 >= 4);
 
-					if (onGridOrNearby && random.nextFloat() < spreadProbability * Math.min(deltaTime / 20.0, 0.4)) {
+					if (onGridOrNearby && rng.nextFloat() < spreadProbability * Math.min(deltaTime / 20.0, 0.4)) {
 
-						createNewNode(c, toAdd);
+						proposals.propose(connStart[i], endX, endY, Math.PI * 2 * rng.nextDouble());
 
-						if (random.nextFloat() < 0.3) {
-							c.active = false;
-							toRemove.add(c);
+						if (rng.nextFloat() < 0.3) {
+							connActive[i] = false;
 						}
 					}
 				}
 			}
 		}
+	}
+
+	private void removeConnectorsOf(Node node) {
+		while (node.connectorCount > 0) {
+			removeConnectorAt(node.connectorSlots[node.connectorCount - 1]);
+		}
+	}
+
+	private long evictionKey(Node node) {
+		switch (evictionPolicy) {
+		case LEAST_RECENTLY_ACTIVE:
+			return node.lastActiveTick;
+		case FARTHEST_FROM_PREY:
+			return -nearestPreyDistanceSq(node);
+		case OLDEST_GENERATION:
+		default:
+			return node.generation;
+		}
+	}
+
+	private long nearestPreyDistanceSq(Node node) {
+		if (preys == null)
+			return 0;
+		if (!preyGridValid) {
+			buildPreyGrid();
+		}
+		if (preyGridCount == 0)
+			return 0;
+
+		float nodeX = node.x * cellSize + cellSize / 2, nodeY = node.y * cellSize + cellSize / 2;
+		int cx = preyGridColumn(nodeX), cy = preyGridRow(nodeY);
+		int maxRadius = Math.max(Math.max(cx, preyGridCols - 1 - cx), Math.max(cy, preyGridRows - 1 - cy));
+		long nearest = Long.MAX_VALUE;
+		for (int r = 0; r <= maxRadius; r++) {
+			// Every prey in ring r is at least r - 1 grid cells away from the node
+			long reach = (long) (r - 1) * PREY_GRID_CELL_SIZE;
+			if (r > 1 && nearest < reach * reach)
+				break;
+
+			for (int gy = Math.max(cy - r, 0); gy <= Math.min(cy + r, preyGridRows - 1); gy++) {
+				int step = (gy == cy - r || gy == cy + r) ? 1 : Math.max(2 * r, 1);
+				for (int gx = cx - r; gx <= cx + r; gx += step) {
+					if (gx < 0 || gx >= preyGridCols)
+						continue;
+
+					int cell = gx + gy * preyGridCols;
+					for (int i = preyCellStart[cell]; i < preyCellStart[cell + 1]; i++) {
+						float dx = preyGridX[i] - nodeX, dy = preyGridY[i] - nodeY;
+						nearest = Math.min(nearest, (long) (dx * dx + dy * dy));
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	private void buildPreyGrid() {
+		preyGridValid = true;
+		preyGridCols = Math.max(1, (cols * cellSize + PREY_GRID_CELL_SIZE - 1) / PREY_GRID_CELL_SIZE);
+		preyGridRows = Math.max(1, (rows * cellSize + PREY_GRID_CELL_SIZE - 1) / PREY_GRID_CELL_SIZE);
+		int numCells = preyGridCols * preyGridRows;
+		if (preyCellStart == null || preyCellStart.length != numCells + 1) {
+			preyCellStart = new int[numCells + 1];
+		} else {
+			Arrays.fill(preyCellStart, 0);
+		}
+
+		preyGridCount = 0;
+		for (Prey prey : preys) {
+			if (prey.isAlive()) {
+				PVector pos = prey.getPosition();
+				preyCellStart[preyGridColumn(pos.x) + preyGridRow(pos.y) * preyGridCols + 1]++;
+				preyGridCount++;
+			}
+		}
+		for (int cell = 0; cell < numCells; cell++) {
+			preyCellStart[cell + 1] += preyCellStart[cell];
+		}
+		if (preyGridX == null || preyGridX.length < preyGridCount) {
+			preyGridX = new float[Math.max(preyGridCount, 16)];
+			preyGridY = new float[preyGridX.length];
+		}
+
+		// Counting sort into cell order, reusing the start offsets as fill cursors
+		for (Prey prey : preys) {
+			if (prey.isAlive()) {
+				PVector pos = prey.getPosition();
+				int slot = preyCellStart[preyGridColumn(pos.x) + preyGridRow(pos.y) * preyGridCols]++;
+				preyGridX[slot] = pos.x;
+				preyGridY[slot] = pos.y;
+			}
+		}
+		for (int cell = numCells; cell > 0; cell--) {
+			preyCellStart[cell] = preyCellStart[cell - 1];
+		}
+		preyCellStart[0] = 0;
+	}
+
+	private int preyGridColumn(float x) {
+		return Math.max(0, Math.min((int) (x / PREY_GRID_CELL_SIZE), preyGridCols - 1));
+	}
+
+	private int preyGridRow(float y) {
+		return Math.max(0, Math.min((int) (y / PREY_GRID_CELL_SIZE), preyGridRows - 1));
+	}
+
+	private void enforceBudgets() {
+		if (evictionPolicy == EvictionPolicy.FARTHEST_FROM_PREY
+				&& tick - lastEvictionRefresh >= PREY_DISTANCE_REFRESH_TICKS) {
+			rebuildEvictionQueues();
+		}
+
+		while (maxNodes > 0 && nodes.size() > maxNodes) {
+			Node victim = pollVictim(nodeEvictionQueue, false);
+			if (victim == null)
+				break;
+			removeNode(victim);
+			evictedNodes++;
+		}
+
+		while (maxConnectors > 0 && numConnectors > maxConnectors) {
+			Node victim = pollVictim(connectorEvictionQueue, true);
+			if (victim == null)
+				break;
+			evictedConnectors += victim.connectorCount;
+			removeConnectorsOf(victim);
+		}
+
+		if (nodeEvictionQueue.size() > 2 * nodes.size() + 64
+				|| connectorEvictionQueue.size() > 2 * nodes.size() + 64) {
+			rebuildEvictionQueues();
+		}
+	}
+
+	private Node pollVictim(PriorityQueue<EvictionEntry> queue, boolean needsConnectors) {
+		EvictionEntry entry;
+		while ((entry = queue.poll()) != null) {
+			Node node = entry.node;
+			if (node.removed || (needsConnectors && node.connectorCount == 0))
+				continue;
+
+			long key = evictionKey(node);
+			if (key > entry.key) {
+				entry.key = key;
+				queue.add(entry);
+				continue;
+			}
+			return node;
+		}
+		return null;
+	}
+
+	private void rebuildEvictionQueues() {
+		lastEvictionRefresh = tick;
+		ArrayList<EvictionEntry> nodeEntries = new ArrayList<>();
+		ArrayList<EvictionEntry> connectorEntries = new ArrayList<>();
+		for (Node node : nodes) {
+			long key = evictionKey(node);
+			if (maxNodes > 0) {
+				nodeEntries.add(new EvictionEntry(node, key));
+			}
+			if (maxConnectors > 0 && node.connectorCount > 0) {
+				connectorEntries.add(new EvictionEntry(node, key));
+			}
+		}
+		nodeEvictionQueue = new PriorityQueue<>(nodeEntries);
+		connectorEvictionQueue = new PriorityQueue<>(connectorEntries);
+	}
+
+	public void setNodeBudget(int maxNodes) {
+		preyGridValid = false;
+		this.maxNodes = Math.max(0, maxNodes);
+		rebuildEvictionQueues();
+		enforceBudgets();
+	}
+
+	public void setConnectorBudget(int maxConnectors) {
+		preyGridValid = false;
+		this.maxConnectors = Math.max(0, maxConnectors);
+		rebuildEvictionQueues();
+		enforceBudgets();
+	}
+
+	public void setEvictionPolicy(EvictionPolicy policy) {
+		if (policy != null && policy != evictionPolicy) {
+			this.evictionPolicy = policy;
+			preyGridValid = false;
+			rebuildEvictionQueues();
+		}
+	}
+
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	@Override
+	public void setPreys(List<Prey> preys) {
+		this.preys = preys;
+		preyGridValid = false;
+	}
+
+	@Override
+	public long getRenderVersion() {
+		return renderVersion;
+	}
+
+	@Override
+	public RenderDamage getStructureDamage() {
+		return structureDamage;
+	}
+
+	@Override
+	public RenderDamage getConnectorDamage() {
+		return connectorDamage;
+	}
+
+	@Override
+	public int getNodeCount() {
+		return nodes.size();
+	}
+
+	public int getConnectorCount() {
+		return numConnectors;
+	}
+
+	public long getEvictedNodeCount() {
+		return evictedNodes;
+	}
+
+	public long getEvictedConnectorCount() {
+		return evictedConnectors;
+	}
+
+	public void setParallelism(int parallelism) {
+		growthPool.shutdown();
+		growthPool = new ForkJoinPool(Math.max(1, parallelism));
+	}
+
+	@Override
+	public void setFixedDeltaTime(long millis) {
+		this.fixedDeltaTime = Math.max(0, millis);
+	}
+
+	@Override
+	public void dispose() {
+		growthPool.shutdown();
+	}
+
+	@Override
+	public void writeSnapshot(SnapshotBuffer out) {
+		out.putInt(cols);
+		out.putInt(rows);
+		out.putLong(random.getState());
+		out.putLong(tick);
+		out.putLong(nextSerial);
+		out.putInt(maxNodes);
+		out.putInt(maxConnectors);
+		out.putInt(evictionPolicy.ordinal());
+		out.putLong(lastEvictionRefresh);
+		out.putLong(evictedNodes);
+		out.putLong(evictedConnectors);
+		out.putInt(maxFractalDepth);
+		out.putFloat(spreadProbability);
+		out.putLong(fixedDeltaTime);
+
+		out.putInt(nodes.size());
+		for (Node node : nodes) {
+			out.putInt(node.x);
+			out.putInt(node.y);
+			out.putInt(node.generation);
+			out.putLong(node.serial);
+			out.putLong(node.lastActiveTick);
+			out.putInt(node.connectorCount);
+			out.putInts(node.connectorSlots, 0, node.connectorCount);
+		}
+
+		out.putInt(numConnectors);
+		out.putInts(connStart, 0, numConnectors);
+		out.putInts(connEndX, 0, numConnectors);
+		out.putInts(connEndY, 0, numConnectors);
+		out.putInts(connOriginX, 0, numConnectors);
+		out.putInts(connOriginY, 0, numConnectors);
+		out.putFloats(connLifespan, 0, numConnectors);
+		out.putFloats(connMaxLifespan, 0, numConnectors);
+		for (int i = 0; i < numConnectors; i++) {
+			out.putBoolean(connActive[i]);
+			out.putBoolean(connMoved[i]);
+		}
+
+		// Fallbacks are written by source node; list orders are kept because they drive later updates
+		for (Node node : nodes) {
+			Connection conn = node.fallback;
+			out.putInt(conn == null ? -2 : conn.node2 == null ? -1 : conn.node2.index);
+		}
+		for (Node node : nodes) {
+			out.putInt(node.incomingFallbacks.size());
+			for (Connection conn : node.incomingFallbacks) {
+				out.putInt(conn.node1.index);
+			}
+		}
+		out.putInt(nodeConnections.size());
+		for (Connection conn : nodeConnections) {
+			out.putInt(conn.node1.index);
+		}
+		writeNodeList(out, farFallbackNodes);
+		writeNodeList(out, dirtyNodes);
+		writeEvictionQueue(out, nodeEvictionQueue);
+		writeEvictionQueue(out, connectorEvictionQueue);
+	}
+
+	private static void writeNodeList(SnapshotBuffer out, ArrayList<Node> list) {
+		int count = 0;
+		for (Node node : list) {
+			if (!node.removed)
+				count++;
+		}
+		out.putInt(count);
+		for (Node node : list) {
+			if (!node.removed) {
+				out.putInt(node.index);
+			}
+		}
+	}
+
+	private static void writeEvictionQueue(SnapshotBuffer out, PriorityQueue<EvictionEntry> queue) {
+		out.putInt(queue.size());
+		for (EvictionEntry entry : queue) {
+			out.putInt(entry.node.removed ? -1 : entry.node.index);
+			out.putLong(entry.node.serial);
+			out.putLong(entry.key);
+		}
+	}
+
+	@Override
+	public void readSnapshot(SnapshotBuffer in) throws IOException {
+		if (in.getInt() != cols || in.getInt() != rows)
+			throw new IOException("Snapshot Malice grid does not match this world");
+
+		random.setState(in.getLong());
+		tick = in.getLong();
+		long serial = in.getLong();
+		maxNodes = in.getInt();
+		maxConnectors = in.getInt();
+		evictionPolicy = EvictionPolicy.values()[in.getInt()];
+		lastEvictionRefresh = in.getLong();
+		evictedNodes = in.getLong();
+		evictedConnectors = in.getLong();
+		maxFractalDepth = in.getInt();
+		spreadProbability = in.getFloat();
+		fixedDeltaTime = in.getLong();
+
+		nodes.clear();
+		nodeConnections.clear();
+		farFallbackNodes.clear();
+		dirtyNodes.clear();
+		Arrays.fill(occupied, 0);
+		int nodeCount = in.getCount(32);
+		for (int n = 0; n < nodeCount; n++) {
+			Node node = new Node(in.getInt(), in.getInt(), in.getInt());
+			node.serial = in.getLong();
+			node.lastActiveTick = in.getLong();
+			node.connectorCount = in.getCount(4);
+			node.connectorSlots = new int[Math.max(4, node.connectorCount)];
+			in.getInts(node.connectorSlots, 0, node.connectorCount);
+			node.index = n;
+			nodes.add(node);
+			if (isInBounds(node.x, node.y)) {
+				int cell = node.x + node.y * cols;
+				occupied[cell >> 6] |= 1L << cell;
+				cellIndex[cell] = n;
+			}
+		}
 
-		connectors.removeAll(toRemove);
-		connectors.addAll(toAdd);
+		numConnectors = 0;
+		int connectorCount = in.getCount(30);
+		while (connStart.length < connectorCount) {
+			numConnectors = connStart.length;
+			addConnectorCapacity();
+		}
+		numConnectors = connectorCount;
+		in.getInts(connStart, 0, numConnectors);
+		in.getInts(connEndX, 0, numConnectors);
+		in.getInts(connEndY, 0, numConnectors);
+		in.getInts(connOriginX, 0, numConnectors);
+		in.getInts(connOriginY, 0, numConnectors);
+		in.getFloats(connLifespan, 0, numConnectors);
+		in.getFloats(connMaxLifespan, 0, numConnectors);
+		for (int i = 0; i < numConnectors; i++) {
+			connActive[i] = in.getBoolean();
+			connMoved[i] = in.getBoolean();
+		}
+
+		for (Node node : nodes) {
+			int target = in.getInt();
+			if (target != -2) {
+				node.fallback = new Connection(node, target == -1 ? null : nodes.get(target));
+			}
+		}
+		for (Node node : nodes) {
+			int count = in.getInt();
+			for (int k = 0; k < count; k++) {
+				node.incomingFallbacks.add(nodes.get(in.getInt()).fallback);
+			}
+		}
+		int connectionCount = in.getInt();
+		for (int k = 0; k < connectionCount; k++) {
+			nodeConnections.add(nodes.get(in.getInt()).fallback);
+		}
+		readNodeList(in, farFallbackNodes);
+		readNodeList(in, dirtyNodes);
+		for (Node node : dirtyNodes) {
+			node.dirty = true;
+		}
+		nodeEvictionQueue = readEvictionQueue(in);
+		connectorEvictionQueue = readEvictionQueue(in);
 
+		nextSerial = serial;
+		lastUpdateTime = System.currentTimeMillis();
 		updateFractalBranches();
+		structureDamage.markAll();
+		connectorDamage.markAll();
+		renderVersion++;
+	}
 
-		ensureAllNodesAreConnected();
+	private void readNodeList(SnapshotBuffer in, ArrayList<Node> list) {
+		int count = in.getInt();
+		for (int k = 0; k < count; k++) {
+			list.add(nodes.get(in.getInt()));
+		}
+	}
+
+	private PriorityQueue<EvictionEntry> readEvictionQueue(SnapshotBuffer in) {
+		PriorityQueue<EvictionEntry> queue = new PriorityQueue<>();
+		int count = in.getInt();
+		for (int k = 0; k < count; k++) {
+			int index = in.getInt();
+			long serial = in.getLong();
+			Node node = index >= 0 ? nodes.get(index) : new Node(0, 0, 0);
+			if (index < 0) {
+				node.removed = true;
+				node.serial = serial;
+			}
+			queue.add(new EvictionEntry(node, in.getLong()));
+		}
+		return queue;
 	}
 
 	private void ensureAllNodesAreConnected() {
+		for (int i = 0; i < dirtyNodes.size(); i++) {
+			Node node = dirtyNodes.get(i);
+			node.dirty = false;
+			if (node.removed)
+				continue;
 
-		nodeConnections.clear();
+			Connection previous = node.fallback;
+			clearFallback(node);
+			if (node.connectorCount == 0) {
+				setFallback(node, findNearestNode(node.x, node.y, cols + rows));
+			}
+			Node previousTarget = previous != null ? previous.node2 : null;
+			Node target = node.fallback != null ? node.fallback.node2 : null;
+			if (previousTarget != target) {
+				damageConnection(previous);
+				damageConnection(node.fallback);
+			}
+		}
+		dirtyNodes.clear();
+	}
 
-		for (int i = 0; i < nodes.size(); i++) {
-			Node current = nodes.get(i);
-			boolean isConnected = false;
+	private void markDirty(Node node) {
+		if (!node.dirty) {
+			node.dirty = true;
+			dirtyNodes.add(node);
+		}
+	}
 
-			for (Connector connector : connectors) {
-				if (connector.start == current) {
-					isConnected = true;
-					break;
-				}
+	private void setFallback(Node node, Node nearest) {
+		Connection conn = new Connection(node, nearest);
+		node.fallback = conn;
+		if (nearest != null) {
+			nearest.incomingFallbacks.add(conn);
+			nodeConnections.add(conn);
+		}
+		if (conn.distanceSq > MAX_DISTANCE_FROM_PARENT * MAX_DISTANCE_FROM_PARENT) {
+			farFallbackNodes.add(node);
+		}
+	}
+
+	private void clearFallback(Node node) {
+		Connection conn = node.fallback;
+		if (conn == null)
+			return;
+		node.fallback = null;
+		if (conn.node2 != null) {
+			conn.node2.incomingFallbacks.remove(conn);
+			nodeConnections.remove(conn);
+		}
+		if (conn.distanceSq > MAX_DISTANCE_FROM_PARENT * MAX_DISTANCE_FROM_PARENT) {
+			farFallbackNodes.remove(node);
+		}
+	}
+
+	private void addConnector(int startIndex, int endX, int endY) {
+		if (numConnectors == connStart.length) {
+			addConnectorCapacity();
+		}
+
+		int i = numConnectors++;
+		connStart[i] = startIndex;
+		connEndX[i] = endX;
+		connEndY[i] = endY;
+		connOriginX[i] = endX;
+		connOriginY[i] = endY;
+		connLifespan[i] = 0;
+		connMaxLifespan[i] = 50000 + random.nextInt(5000);
+		connActive[i] = true;
+		connMoved[i] = false;
+		damageConnector(i);
+
+		Node start = nodes.get(startIndex);
+		if (start.connectorCount == start.connectorSlots.length) {
+			start.connectorSlots = Arrays.copyOf(start.connectorSlots, start.connectorCount * 2);
+		}
+		start.connectorSlots[start.connectorCount] = i;
+		if (start.connectorCount++ == 0) {
+			markDirty(start);
+			if (maxConnectors > 0) {
+				connectorEvictionQueue.add(new EvictionEntry(start, evictionKey(start)));
 			}
+		}
+	}
 
-			if (!isConnected) {
+	private void addConnectorCapacity() {
+		int capacity = numConnectors * 2;
+		connStart = Arrays.copyOf(connStart, capacity);
+		connEndX = Arrays.copyOf(connEndX, capacity);
+		connEndY = Arrays.copyOf(connEndY, capacity);
+		connOriginX = Arrays.copyOf(connOriginX, capacity);
+		connOriginY = Arrays.copyOf(connOriginY, capacity);
+		connLifespan = Arrays.copyOf(connLifespan, capacity);
+		connMaxLifespan = Arrays.copyOf(connMaxLifespan, capacity);
+		connActive = Arrays.copyOf(connActive, capacity);
+		connMoved = Arrays.copyOf(connMoved, capacity);
+	}
 
-				Node nearestNode = null;
-				double nearestDistance = Double.MAX_VALUE;
+	private void removeConnectorAt(int i) {
+		damageConnector(i);
+		Node start = nodes.get(connStart[i]);
+		replaceConnectorSlot(start, i, start.connectorSlots[start.connectorCount - 1]);
+		if (--start.connectorCount == 0) {
+			markDirty(start);
+		}
 
-				for (int j = 0; j < nodes.size(); j++) {
-					if (i == j)
-						continue;
+		int last = --numConnectors;
+		if (i != last) {
+			moveConnector(last, i);
+		}
+	}
 
-					Node other = nodes.get(j);
-					double distance = current.distanceTo(other);
+	private void replaceConnectorSlot(Node node, int from, int to) {
+		for (int k = 0; k < node.connectorCount; k++) {
+			if (node.connectorSlots[k] == from) {
+				node.connectorSlots[k] = to;
+				return;
+			}
+		}
+	}
 
-					if (distance < nearestDistance) {
-						nearestDistance = distance;
-						nearestNode = other;
-					}
-				}
+	private void moveConnector(int from, int to) {
+		replaceConnectorSlot(nodes.get(connStart[from]), from, to);
+		connStart[to] = connStart[from];
+		connEndX[to] = connEndX[from];
+		connEndY[to] = connEndY[from];
+		connOriginX[to] = connOriginX[from];
+		connOriginY[to] = connOriginY[from];
+		connLifespan[to] = connLifespan[from];
+		connMaxLifespan[to] = connMaxLifespan[from];
+		connActive[to] = connActive[from];
+		connMoved[to] = connMoved[from];
+	}
+
+	private void proposeConnector(int startIndex, int endX, int endY) {
+		if (numPending == pendingStart.length) {
+			int capacity = numPending * 2;
+			pendingStart = Arrays.copyOf(pendingStart, capacity);
+			pendingEndX = Arrays.copyOf(pendingEndX, capacity);
+			pendingEndY = Arrays.copyOf(pendingEndY, capacity);
+		}
+		pendingStart[numPending] = startIndex;
+		pendingEndX[numPending] = endX;
+		pendingEndY[numPending] = endY;
+		numPending++;
+	}
 
-				if (nearestNode != null) {
-					nodeConnections.add(new Connection(current, nearestNode));
+	private void invalidateFallbacksNear(Node added) {
+		int reach = MAX_DISTANCE_FROM_PARENT;
+		for (int y = Math.max(0, added.y - reach); y <= Math.min(rows - 1, added.y + reach); y++) {
+			for (int x = Math.max(0, added.x - reach); x <= Math.min(cols - 1, added.x + reach); x++) {
+				if (isOccupied(x, y)) {
+					invalidateFallbackIfCloser(nodes.get(cellIndex[x + y * cols]), added);
 				}
 			}
 		}
+		for (int i = 0; i < farFallbackNodes.size(); i++) {
+			invalidateFallbackIfCloser(farFallbackNodes.get(i), added);
+		}
+	}
+
+	private void invalidateFallbackIfCloser(Node node, Node added) {
+		if (node == added || node.fallback == null)
+			return;
+		int dx = node.x - added.x, dy = node.y - added.y;
+		if (dx * dx + dy * dy < node.fallback.distanceSq) {
+			markDirty(node);
+		}
 	}
 
 	private void updateFractalBranches() {
-		fractalBranches.clear();
+		if (nodes.size() < 3)
+			return;
 
-		if (nodes.size() >= 3) {
-			for (int i = 0; i < nodes.size(); i++) {
-				Node current = nodes.get(i);
-				for (int j = i + 1; j < Math.min(i + 4, nodes.size()); j++) {
-					Node other = nodes.get(j);
-
-					double dx = (other.x - current.x) * cellSize;
-					double dy = (other.y - current.y) * cellSize;
-					double dist = Math.sqrt(dx * dx + dy * dy);
-
-					if (dist < cellSize * 15) {
-						int startX = current.x * cellSize + cellSize / 2;
-						int startY = current.y * cellSize + cellSize / 2;
-						int endX = other.x * cellSize + cellSize / 2;
-						int endY = other.y * cellSize + cellSize / 2;
-
-						float angle = (float) Math.atan2(dy, dx);
-						FractalBranch branch = new FractalBranch(startX, startY, endX, endY, 0, angle);
-						fractalBranches.add(branch);
-
-						generateFractalBranches(branch, 1);
-					}
-				}
+		for (int i = 0; i < nodes.size(); i++) {
+			Node current = nodes.get(i);
+			if (!current.branchesValid) {
+				buildFractalBranches(i);
+			}
+		}
+	}
+
+	private void invalidateFractalBranches(int fromIndex, int toIndex) {
+		for (int i = Math.max(0, fromIndex); i <= Math.min(toIndex, nodes.size() - 1); i++) {
+			nodes.get(i).branchesValid = false;
+		}
+	}
+
+	private void buildFractalBranches(int i) {
+		Node current = nodes.get(i);
+		int perPair = (1 << maxFractalDepth) - 1;
+		int capacity = BRANCH_WINDOW * perPair * BRANCH_STRIDE;
+		damageBranches(current);
+		if (current.branches == null || current.branches.length < capacity) {
+			current.branches = new int[capacity];
+		}
+		current.branchCount = 0;
+		current.branchesValid = true;
+
+		for (int j = i + 1; j < Math.min(i + 1 + BRANCH_WINDOW, nodes.size()); j++) {
+			Node other = nodes.get(j);
+
+			double dx = (other.x - current.x) * cellSize;
+			double dy = (other.y - current.y) * cellSize;
+			double dist = Math.sqrt(dx * dx + dy * dy);
+
+			if (dist < cellSize * 15) {
+				int startX = current.x * cellSize + cellSize / 2;
+				int startY = current.y * cellSize + cellSize / 2;
+				int endX = other.x * cellSize + cellSize / 2;
+				int endY = other.y * cellSize + cellSize / 2;
+
+				float angle = (float) Math.atan2(dy, dx);
+				addFractalBranch(current, startX, startY, endX, endY, 0);
+
+				generateFractalBranches(current, startX, startY, endX, endY, angle, 1);
 			}
 		}
+		damageBranches(current);
 	}
 
-	private void generateFractalBranches(FractalBranch parent, int depth) {
+	private void generateFractalBranches(Node owner, int x1, int y1, int x2, int y2, float angle, int depth) {
 		if (depth >= maxFractalDepth)
 			return;
 
-		int midX = (parent.x1 + parent.x2) / 2;
-		int midY = (parent.y1 + parent.y2) / 2;
+		int midX = (x1 + x2) / 2;
+		int midY = (y1 + y2) / 2;
 
-		double branchLength = Math.sqrt(Math.pow(parent.x2 - parent.x1, 2) + Math.pow(parent.y2 - parent.y1, 2))
-				* (0.6 - depth * 0.1);
+		int dx = x2 - x1, dy = y2 - y1;
+		double branchLength = Math.sqrt((double) dx * dx + (double) dy * dy) * (0.6 - depth * 0.1);
 
 		for (int i = 0; i < 2; i++) {
-			float newAngle = parent.angle + (i == 0 ? 0.6f : -0.6f);
+			float newAngle = angle + (i == 0 ? 0.6f : -0.6f);
 
 			int endX = midX + (int) (Math.cos(newAngle) * branchLength);
 			int endY = midY + (int) (Math.sin(newAngle) * branchLength);
 
-			FractalBranch newBranch = new FractalBranch(midX, midY, endX, endY, depth, newAngle);
-			fractalBranches.add(newBranch);
+			addFractalBranch(owner, midX, midY, endX, endY, depth);
 
-			generateFractalBranches(newBranch, depth + 1);
+			generateFractalBranches(owner, midX, midY, endX, endY, newAngle, depth + 1);
 		}
 	}
 
-	private void createNewNode(Connector c, ArrayList<Connector> newConnectors) {
-		int parentGeneration = c.start.generation;
-		for (Node existingNode : nodes) {
-			double distance = Math.sqrt(Math.pow(existingNode.x - c.endX, 2) + Math.pow(existingNode.y - c.endY, 2));
-			if (distance < 2) {
+	private void addFractalBranch(Node owner, int x1, int y1, int x2, int y2, int depth) {
+		int offset = owner.branchCount * BRANCH_STRIDE;
+		owner.branches[offset] = x1;
+		owner.branches[offset + 1] = y1;
+		owner.branches[offset + 2] = x2;
+		owner.branches[offset + 3] = y2;
+		owner.branches[offset + 4] = depth;
+		owner.branchCount++;
+	}
 
-				return;
-			}
+	public int getMaxFractalDepth() {
+		return maxFractalDepth;
+	}
+
+	public void setMaxFractalDepth(int depth) {
+		if (depth >= 1 && depth != maxFractalDepth) {
+			maxFractalDepth = depth;
+			invalidateFractalBranches(0, nodes.size() - 1);
+			renderVersion++;
 		}
+	}
 
-		Node newNode = new Node(c.endX, c.endY, parentGeneration + 1);
-		nodes.add(newNode);
+	private void createNewNode(Node start, int x, int y, double angleOffset) {
+		int parentGeneration = start.generation;
+		if (hasNodeWithin(x, y, 1)) {
+			return;
+		}
+
+		Node newNode = new Node(x, y, parentGeneration + 1);
+		int newIndex = addNode(newNode);
 		int generation = parentGeneration + 1;
 
 		int baseNumBranches = 6;
 		int numBranches = Math.max(baseNumBranches - (generation / 2), 2);
 
-		double angleOffset = Math.PI * 2 * random.nextDouble();
-
 		int actualBranches = (int) Math.ceil(numBranches * spreadProbability);
 		actualBranches = Math.max(2, actualBranches);
 
@@ -424,65 +1317,235 @@ public class Malice {
 
 			int distance = Math.max(3 - generation / 3, 1);
 
-			int endX = c.endX + (int) (Math.cos(angle) * distance);
-			int endY = c.endY + (int) (Math.sin(angle) * distance);
+			int endX = x + (int) (Math.cos(angle) * distance);
+			int endY = y + (int) (Math.sin(angle) * distance);
 
 			if (isInBounds(endX, endY)) {
-				boolean isTooIsolated = c.start.distanceTo(endX, endY) > MAX_DISTANCE_FROM_PARENT;
+				boolean isTooIsolated = start.distanceTo(endX, endY) > MAX_DISTANCE_FROM_PARENT;
 				if (!isTooIsolated) {
-					newConnectors.add(new Connector(newNode, endX, endY));
+					proposeConnector(newIndex, endX, endY);
 				}
 			}
 		}
 	}
 
+	@Override
 	public void render(Graphics2D g2d) {
-		g2d.setStroke(new BasicStroke(0.5f));
-		for (Connection conn : nodeConnections) {
-			int startX = conn.node1.x * cellSize + cellSize / 2;
-			int startY = conn.node1.y * cellSize + cellSize / 2;
-			int endX = conn.node2.x * cellSize + cellSize / 2;
-			int endY = conn.node2.y * cellSize + cellSize / 2;
+		render(g2d, new Rectangle(0, 0, cols * cellSize, rows * cellSize));
+	}
 
-			g2d.setColor(new Color(100, 0, 100, 100));
-			g2d.drawLine(startX, startY, endX, endY);
+	@Override
+	public void render(Graphics2D g2d, Rectangle view) {
+		renderConnectors(g2d, view);
+		renderStructure(g2d, view);
+	}
+
+	@Override
+	public void renderStructure(Graphics2D g2d, Rectangle view) {
+		int minX = Math.max(0, Math.floorDiv(view.x, cellSize) - RENDER_MARGIN);
+		int maxX = Math.min(cols - 1, Math.floorDiv(view.x + view.width, cellSize) + RENDER_MARGIN);
+		int minY = Math.max(0, Math.floorDiv(view.y, cellSize) - RENDER_MARGIN);
+		int maxY = Math.min(rows - 1, Math.floorDiv(view.y + view.height, cellSize) + RENDER_MARGIN);
+		collectVisibleNodes(minX, minY, maxX, maxY);
+
+		connectionPath.reset();
+		for (Node node : visibleNodes) {
+			if (node.fallback != null && node.fallback.node2 != null) {
+				appendConnection(node.fallback);
+			}
+			for (Connection conn : node.incomingFallbacks) {
+				if (!isWithin(conn.node1, minX, minY, maxX, maxY)) {
+					appendConnection(conn);
+				}
+			}
+		}
+		for (Node node : farFallbackNodes) {
+			Connection conn = node.fallback;
+			if (conn != null && conn.node2 != null && !isWithin(node, minX, minY, maxX, maxY)
+					&& !isWithin(conn.node2, minX, minY, maxX, maxY)) {
+				appendConnection(conn);
+			}
 		}
+		g2d.setStroke(CONNECTION_STROKE);
+		g2d.setColor(CONNECTION_COLOR);
+		g2d.draw(connectionPath);
 
-		for (FractalBranch branch : fractalBranches) {
-			float strokeWidth = Math.max(2.5f - (branch.depth * 0.5f), 0.5f);
-			g2d.setStroke(new BasicStroke(strokeWidth));
+		if (nodes.size() >= 3) {
+			ensureBranchStyles();
+			for (int depth = 0; depth < maxFractalDepth; depth++) {
+				branchPaths[depth].reset();
+			}
+			for (Node node : visibleNodes) {
+				int[] branches = node.branches;
+				for (int b = 0; b < node.branchCount; b++) {
+					int offset = b * BRANCH_STRIDE;
+					Path2D.Float path = branchPaths[branches[offset + 4]];
+					path.moveTo(branches[offset], branches[offset + 1]);
+					path.lineTo(branches[offset + 2], branches[offset + 3]);
+				}
+			}
+			for (int depth = 0; depth < maxFractalDepth; depth++) {
+				g2d.setStroke(branchStrokes[depth]);
+				g2d.setColor(branchColors[depth]);
+				g2d.draw(branchPaths[depth]);
+			}
+		}
 
-			int hue = (branch.depth * 30) % 360;
-			Color branchColor = Color.getHSBColor(hue / 360f, 0.8f, 0.7f);
-			g2d.setColor(new Color(branchColor.getRed(), branchColor.getGreen(), branchColor.getBlue(), 120));
+		for (Path2D.Float path : nodePaths) {
+			path.reset();
+		}
+		for (Node node : visibleNodes) {
+			int bucket = Math.min(node.generation, nodePaths.length - 1);
+			int nodeSize = Math.max(cellSize - bucket, cellSize / 2);
+			nodeShape.setFrame(node.x * cellSize + cellSize / 4, node.y * cellSize + cellSize / 4, nodeSize, nodeSize);
+			nodePaths[bucket].append(nodeShape, false);
+		}
+		g2d.setStroke(NODE_STROKE);
+		for (int bucket = 0; bucket < nodePaths.length; bucket++) {
+			g2d.setColor(nodeColors[bucket]);
+			g2d.fill(nodePaths[bucket]);
+		}
+	}
+
+	@Override
+	public void renderConnectors(Graphics2D g2d, Rectangle view) {
+		int minX = Math.max(0, Math.floorDiv(view.x, cellSize) - RENDER_MARGIN);
+		int maxX = Math.min(cols - 1, Math.floorDiv(view.x + view.width, cellSize) + RENDER_MARGIN);
+		int minY = Math.max(0, Math.floorDiv(view.y, cellSize) - RENDER_MARGIN);
+		int maxY = Math.min(rows - 1, Math.floorDiv(view.y + view.height, cellSize) + RENDER_MARGIN);
+		collectVisibleNodes(minX, minY, maxX, maxY);
+
+		for (Path2D.Float path : connectorPaths) {
+			path.reset();
+		}
+		for (Node start : visibleNodes) {
+			Path2D.Float path = connectorPaths[Math.min(start.generation, connectorPaths.length - 1)];
+			for (int k = 0; k < start.connectorCount; k++) {
+				int i = start.connectorSlots[k];
+				path.moveTo(cellCenter(start.x), cellCenter(start.y));
+				path.lineTo(cellCenter(connEndX[i]), cellCenter(connEndY[i]));
+			}
+		}
+		g2d.setStroke(CONNECTOR_STROKE);
+		for (int bucket = 0; bucket < connectorPaths.length; bucket++) {
+			g2d.setColor(connectorColors[bucket]);
+			g2d.draw(connectorPaths[bucket]);
+		}
+	}
+
+	private void collectVisibleNodes(int minX, int minY, int maxX, int maxY) {
+		visibleNodes.clear();
+		if (minX > maxX || minY > maxY)
+			return;
+
+		if ((long) (maxX - minX + 1) * (maxY - minY + 1) >= nodes.size()) {
+			for (Node node : nodes) {
+				if (isWithin(node, minX, minY, maxX, maxY)) {
+					visibleNodes.add(node);
+				}
+			}
+			return;
+		}
+
+		for (int y = minY; y <= maxY; y++) {
+			int rowStart = y * cols;
+			if (!anyOccupied(rowStart + minX, rowStart + maxX))
+				continue;
+			for (int x = minX; x <= maxX; x++) {
+				if (isOccupied(x, y)) {
+					visibleNodes.add(nodes.get(cellIndex[rowStart + x]));
+				}
+			}
+		}
+	}
+
+	private static boolean isWithin(Node node, int minX, int minY, int maxX, int maxY) {
+		return node.x >= minX && node.x <= maxX && node.y >= minY && node.y <= maxY;
+	}
+
+	private void appendConnection(Connection conn) {
+		connectionPath.moveTo(conn.node1.x * cellSize + cellSize / 2, conn.node1.y * cellSize + cellSize / 2);
+		connectionPath.lineTo(conn.node2.x * cellSize + cellSize / 2, conn.node2.y * cellSize + cellSize / 2);
+	}
+
+	private int cellCenter(int cell) {
+		return cell * cellSize + cellSize / 2;
+	}
+
+	private void damageCell(int x, int y) {
+		structureDamage.add((x - 1) * cellSize, (y - 1) * cellSize, cellSize * 3, cellSize * 3);
+		renderVersion++;
+	}
+
+	private void damageConnector(int i) {
+		Node start = nodes.get(connStart[i]);
+		connectorDamage.addSegment(cellCenter(start.x), cellCenter(start.y), cellCenter(connEndX[i]),
+				cellCenter(connEndY[i]), DAMAGE_PADDING);
+	}
+
+	private void damageConnection(Connection conn) {
+		if (conn == null || conn.node2 == null)
+			return;
+		structureDamage.addSegment(cellCenter(conn.node1.x), cellCenter(conn.node1.y), cellCenter(conn.node2.x),
+				cellCenter(conn.node2.y), DAMAGE_PADDING);
+		renderVersion++;
+	}
+
+	private void damageBranches(Node node) {
+		if (node.branchCount == 0)
+			return;
 
-			g2d.drawLine(branch.x1, branch.y1, branch.x2, branch.y2);
+		int[] branches = node.branches;
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int b = 0; b < node.branchCount; b++) {
+			int offset = b * BRANCH_STRIDE;
+			minX = Math.min(minX, Math.min(branches[offset], branches[offset + 2]));
+			minY = Math.min(minY, Math.min(branches[offset + 1], branches[offset + 3]));
+			maxX = Math.max(maxX, Math.max(branches[offset], branches[offset + 2]));
+			maxY = Math.max(maxY, Math.max(branches[offset + 1], branches[offset + 3]));
 		}
+		structureDamage.add(minX - DAMAGE_PADDING, minY - DAMAGE_PADDING, maxX - minX + DAMAGE_PADDING * 2 + 1,
+				maxY - minY + DAMAGE_PADDING * 2 + 1);
+		renderVersion++;
+	}
 
-		g2d.setStroke(new BasicStroke(1.0f));
-		for (Connector c : connectors) {
-			int startX = c.start.x * cellSize + cellSize / 2;
-			int startY = c.start.y * cellSize + cellSize / 2;
-			int endX = c.endX * cellSize + cellSize / 2;
-			int endY = c.endY * cellSize + cellSize / 2;
+	private void createRenderBuckets() {
+		connectionPath = new Path2D.Float();
+		nodeShape = new Ellipse2D.Float();
 
-			int generation = c.start.generation;
+		connectorPaths = new Path2D.Float[CONNECTOR_BUCKETS];
+		connectorColors = new Color[CONNECTOR_BUCKETS];
+		for (int generation = 0; generation < CONNECTOR_BUCKETS; generation++) {
+			connectorPaths[generation] = new Path2D.Float();
 			int blueVal = Math.max(0, Math.min(180 + generation * 20, 255));
-			g2d.setColor(new Color(180, 0, blueVal, 200));
-			g2d.drawLine(startX, startY, endX, endY);
+			connectorColors[generation] = new Color(180, 0, blueVal, 200);
 		}
 
-		for (Node node : nodes) {
-			int x = node.x * cellSize + cellSize / 4;
-			int y = node.y * cellSize + cellSize / 4;
+		int nodeBuckets = Math.max(NODE_COLOR_BUCKETS, cellSize - cellSize / 2 + 1);
+		nodePaths = new Path2D.Float[nodeBuckets];
+		nodeColors = new Color[nodeBuckets];
+		for (int generation = 0; generation < nodeBuckets; generation++) {
+			nodePaths[generation] = new Path2D.Float();
+			int value = Math.max(0, Math.min(180 + generation * 15, 255));
+			nodeColors[generation] = new Color(value, 0, value);
+		}
+	}
+
+	private void ensureBranchStyles() {
+		if (branchPaths != null && branchPaths.length >= maxFractalDepth)
+			return;
 
-			int generation = node.generation;
-			int red = Math.max(0, Math.min(180 + generation * 15, 255));
-			int blue = Math.max(0, Math.min(180 + generation * 15, 255));
+		branchPaths = new Path2D.Float[maxFractalDepth];
+		branchStrokes = new BasicStroke[maxFractalDepth];
+		branchColors = new Color[maxFractalDepth];
+		for (int depth = 0; depth < maxFractalDepth; depth++) {
+			branchPaths[depth] = new Path2D.Float();
+			branchStrokes[depth] = new BasicStroke(Math.max(2.5f - (depth * 0.5f), 0.5f));
 
-			g2d.setColor(new Color(red, 0, blue));
-			int nodeSize = Math.max(cellSize - generation, cellSize / 2);
-			g2d.fillOval(x, y, nodeSize, nodeSize);
+			int hue = (depth * 30) % 360;
+			Color branchColor = Color.getHSBColor(hue / 360f, 0.8f, 0.7f);
+			branchColors[depth] = new Color(branchColor.getRed(), branchColor.getGreen(), branchColor.getBlue(), 120);
 		}
 	}
 
@@ -490,6 +1553,7 @@ public class Malice {
 		return x % 5 == 0 && y % 5 == 0;
 	}
 
+	@Override
 	public ArrayList<PVector> getNodePositions() {
 		ArrayList<PVector> positions = new ArrayList<>();
 		for (Node node : nodes) {
@@ -499,42 +1563,79 @@ public class Malice {
 	}
 
 	public Node getNodeAt(int gridX, int gridY) {
-		for (Node node : nodes) {
-			if (node.x == gridX && node.y == gridY) {
-				return node;
-			}
-		}
-		return null;
+		if (!isOccupied(gridX, gridY))
+			return null;
+		return nodes.get(cellIndex[gridX + gridY * cols]);
+	}
+
+	@Override
+	public boolean removeNodeAt(int gridX, int gridY) {
+		Node node = getNodeAt(gridX, gridY);
+		if (node == null)
+			return false;
+		removeNode(node);
+		return true;
 	}
 
 	public void removeNode(Node node) {
-		if (node != null && nodes.contains(node)) {
-			nodes.remove(node);
+		if (node == null || node.removed || node.index >= nodes.size() || nodes.get(node.index) != node)
+			return;
 
-			ArrayList<Connector> toRemove = new ArrayList<>();
-			for (Connector c : connectors) {
-				if (c.start == node) {
-					toRemove.add(c);
-				}
-			}
-			connectors.removeAll(toRemove);
+		node.removed = true;
+		damageCell(node.x, node.y);
+		damageBranches(node);
+		removeConnectorsOf(node);
 
-			ArrayList<Connection> connectionsToRemove = new ArrayList<>();
-			for (Connection conn : nodeConnections) {
-				if (conn.node1 == node || conn.node2 == node) {
-					connectionsToRemove.add(conn);
-				}
+		if (isInBounds(node.x, node.y)) {
+			int cell = node.x + node.y * cols;
+			occupied[cell >> 6] &= ~(1L << cell);
+		}
+
+		int index = node.index;
+		int last = nodes.size() - 1;
+		if (index != last) {
+			Node moved = nodes.get(last);
+			nodes.set(index, moved);
+			moved.index = index;
+			if (isInBounds(moved.x, moved.y)) {
+				cellIndex[moved.x + moved.y * cols] = index;
+			}
+			for (int k = 0; k < moved.connectorCount; k++) {
+				connStart[moved.connectorSlots[k]] = index;
+			}
+		}
+		nodes.remove(last);
+		invalidateFractalBranches(index - BRANCH_WINDOW, index);
+		invalidateFractalBranches(last - BRANCH_WINDOW, last - 1);
+		if (nodes.size() == 2) {
+			// Branches are only drawn for three or more nodes
+			for (Node remaining : nodes) {
+				damageBranches(remaining);
 			}
-			nodeConnections.removeAll(connectionsToRemove);
+		}
+
+		damageConnection(node.fallback);
+		clearFallback(node);
+		for (Connection conn : new ArrayList<>(node.incomingFallbacks)) {
+			damageConnection(conn);
+			clearFallback(conn.node1);
+			markDirty(conn.node1);
 		}
 	}
 
+	@Override
 	public void checkPlantCollisions(Plant plant) {
+		PVector pos = plant.getPosition();
+		float radius = plant.getDestroyMaliceRadius();
+		int minX = Math.max(0, cellFloor(pos.x - radius)), maxX = Math.min(cols - 1, cellFloor(pos.x + radius));
+		int minY = Math.max(0, cellFloor(pos.y - radius)), maxY = Math.min(rows - 1, cellFloor(pos.y + radius));
+
 		ArrayList<Node> nodesToRemove = new ArrayList<>();
-		for (Node node : nodes) {
-			PVector nodePos = new PVector(node.x * cellSize + cellSize / 2, node.y * cellSize + cellSize / 2);
-			if (plant.canDestroyMalice(nodePos)) {
-				nodesToRemove.add(node);
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				if (isOccupied(x, y) && plant.canDestroyMalice(x * cellSize + cellSize / 2, y * cellSize + cellSize / 2)) {
+					nodesToRemove.add(nodes.get(cellIndex[x + y * cols]));
+				}
 			}
 		}
 
@@ -543,10 +1644,31 @@ public class Malice {
 		}
 	}
 
+	@Override
+	public boolean isInContact(Prey prey) {
+		PVector pos = prey.getPosition();
+		float radius = prey.getMaliceDetectionRadius();
+		int minX = Math.max(0, cellFloor(pos.x - radius)), maxX = Math.min(cols - 1, cellFloor(pos.x + radius));
+		int minY = Math.max(0, cellFloor(pos.y - radius)), maxY = Math.min(rows - 1, cellFloor(pos.y + radius));
+
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				if (isOccupied(x, y) && prey.detectsMalice(x * cellSize + cellSize / 2, y * cellSize + cellSize / 2)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
 	public void checkPreyCollisions(Prey prey) {
-		for (Node node : nodes) {
-			PVector nodePos = new PVector(node.x * cellSize + cellSize / 2, node.y * cellSize + cellSize / 2);
-			prey.checkMaliceContact(nodePos);
+		if (!prey.isInfected() && isInContact(prey)) {
+			prey.infectCreature();
 		}
 	}
+
+	private int cellFloor(float pixel) {
+		return (int) Math.floor((pixel - cellSize / 2) / cellSize);
+	}
 }
\ No newline at end of file
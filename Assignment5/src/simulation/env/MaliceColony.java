@@ -0,0 +1,53 @@
+package simulation.env;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import processing.core.PVector;
+import simulation.core.SnapshotBuffer;
+import simulation.entities.Plant;
+import simulation.entities.Prey;
+
+public interface MaliceColony {
+	void update();
+
+	void render(Graphics2D g2d);
+
+	void render(Graphics2D g2d, Rectangle view);
+
+	void renderStructure(Graphics2D g2d, Rectangle view);
+
+	void renderConnectors(Graphics2D g2d, Rectangle view);
+
+	boolean createNodeAt(float x, float y);
+
+	boolean removeNodeAt(int gridX, int gridY);
+
+	ArrayList<PVector> getNodePositions();
+
+	int getNodeCount();
+
+	long getRenderVersion();
+
+	RenderDamage getStructureDamage();
+
+	RenderDamage getConnectorDamage();
+
+	void checkPlantCollisions(Plant plant);
+
+	boolean isInContact(Prey prey);
+
+	void checkPreyCollisions(Prey prey);
+
+	void setPreys(List<Prey> preys);
+
+	void setFixedDeltaTime(long millis);
+
+	void dispose();
+
+	void writeSnapshot(SnapshotBuffer out);
+
+	void readSnapshot(SnapshotBuffer in) throws IOException;
+}
\ No newline at end of file
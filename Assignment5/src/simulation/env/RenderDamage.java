@@ -0,0 +1,68 @@
+package simulation.env;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+public class RenderDamage {
+	private static final int MAX_REGIONS = 1024;
+
+	private final ArrayList<Rectangle> regions = new ArrayList<>();
+	private int count = 0;
+	private final Rectangle overflow = new Rectangle();
+	private boolean overflowed = false;
+	private boolean everything = false;
+
+	public void add(int x, int y, int width, int height) {
+		if (everything)
+			return;
+
+		// Past the region budget further damage is folded into one bounding box
+		if (count == MAX_REGIONS) {
+			if (overflowed) {
+				overflow.add(x, y);
+				overflow.add(x + width, y + height);
+			} else {
+				overflow.setBounds(x, y, width, height);
+				overflowed = true;
+			}
+			return;
+		}
+		if (count == regions.size()) {
+			regions.add(new Rectangle());
+		}
+		regions.get(count++).setBounds(x, y, width, height);
+	}
+
+	public void addSegment(int x1, int y1, int x2, int y2, int padding) {
+		add(Math.min(x1, x2) - padding, Math.min(y1, y2) - padding, Math.abs(x2 - x1) + padding * 2 + 1,
+				Math.abs(y2 - y1) + padding * 2 + 1);
+	}
+
+	public void markAll() {
+		everything = true;
+		count = 0;
+		overflowed = false;
+	}
+
+	public void clear() {
+		everything = false;
+		count = 0;
+		overflowed = false;
+	}
+
+	public boolean isEverything() {
+		return everything;
+	}
+
+	public boolean isEmpty() {
+		return !everything && count == 0;
+	}
+
+	public int size() {
+		return overflowed ? count + 1 : count;
+	}
+
+	public Rectangle get(int index) {
+		return index < count ? regions.get(index) : overflow;
+	}
+}
\ No newline at end of file
@@ -12,6 +12,7 @@ public class SidebarPanel extends JPanel {
 	public static final int MALICE = 3;
 
 	private int selectedItem = NONE;
+	private String status = "";
 	protected int maxPlants = 6;
 	protected int maxPrey = 3;
 
@@ -70,6 +71,16 @@ public class SidebarPanel extends JPanel {
 		g2d.drawString("Drag from buttons to place items", 10, 480);
 		g2d.drawString("Right-click to delete items", 10, 500);
 		g2d.drawString("Press 'Spacebar' to hide/reveal stats", 10, 520);
+		g2d.drawString("Press 'N' to toggle prey neighbor lists", 10, 540);
+		g2d.drawString("Press 'M' to switch Malice engine", 10, 560);
+		g2d.drawString("Scroll to zoom, middle-drag to pan", 10, 580);
+		g2d.drawString("Arrows pan, '0' resets the camera", 10, 600);
+		g2d.drawString("Press 'R' to start/stop frame capture", 10, 620);
+		g2d.drawString("Press 'Q' to toggle adaptive quality", 10, 640);
+		g2d.drawString("Press F5/F9 to save/load a snapshot", 10, 660);
+
+		g2d.setFont(new Font("Arial", Font.PLAIN, 11));
+		g2d.drawString(status, 10, 685);
 	}
 
 	private void drawButton(Graphics2D g2d, Rectangle rect, String text, Color color, boolean selected) {
@@ -121,4 +132,23 @@ public class SidebarPanel extends JPanel {
 		return maxPrey;
 	}
 
+	public void setMaxPlants(int maxPlants) {
+		this.maxPlants = maxPlants;
+		repaint();
+	}
+
+	public void setMaxPrey(int maxPrey) {
+		this.maxPrey = maxPrey;
+		repaint();
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status != null ? status : "";
+		repaint();
+	}
+
 }
\ No newline at end of file